@@ -0,0 +1,30 @@
+package com.jack.utils.config;
+
+import com.jack.utils.redis.CacheWarmUp;
+import com.jack.utils.redis.CacheWarmUpProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 缓存预热，存在{@link CacheWarmUpProvider}时生效
+ */
+@Configuration
+@ConditionalOnBean(CacheWarmUpProvider.class)
+@ConditionalOnProperty(prefix = "jack.redis.warm-up", name = "enabled", matchIfMissing = true)
+@EnableConfigurationProperties(RedisProperties.class)
+public class CacheWarmUpConfig {
+
+    @Bean
+    public CacheWarmUp cacheWarmUp(ObjectProvider<CacheManager> cacheManagerProvider,
+                                   ObjectProvider<CacheWarmUpProvider> warmUpProviders,
+                                   RedisProperties redisProperties) {
+        RedisProperties.WarmUp warmUp = redisProperties.getWarmUp();
+        return new CacheWarmUp(cacheManagerProvider, warmUpProviders, warmUp.getPoolSize(), warmUp.getTimeout(),
+                warmUp.getBatchSize(), warmUp.isPopulateLocal());
+    }
+}
@@ -0,0 +1,324 @@
+package com.jack.utils.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "jack.task")
+@Data
+public class DynamicTaskProperties {
+
+    /**
+     * 全量校对的周期，单位：秒。
+     * <p></p>
+     * 定时任务的添加、删除会立即生效，全量校对只作为兜底手段。小于等于0时不开启，默认：0
+     */
+    private long reconcilePeriod = 0L;
+
+    /**
+     * 定时任务调度器的类型。默认：default
+     */
+    private SchedulerType schedulerType = SchedulerType.DEFAULT;
+
+    /**
+     * 时间轮的刻度，单位：毫秒。只在scheduler-type = hashed-wheel时有效，默认：100
+     */
+    private long wheelTickMillis = 100L;
+
+    /**
+     * 每层时间轮的槽位数量。只在scheduler-type = hashed-wheel时有效，默认：512
+     */
+    private int wheelSize = 512;
+
+    /**
+     * 同一个定时任务的上一次执行还没有完成时，如何处理新的触发，可以在每个定时任务上单独指定。默认：concurrent
+     */
+    private OverlapPolicy overlapPolicy = OverlapPolicy.CONCURRENT;
+
+    /**
+     * 同一个定时任务同时执行的最大数量，小于等于0时不限制。只在overlap-policy = concurrent时有效，默认：0
+     */
+    private int maxConcurrentRuns = 0;
+
+    /**
+     * 执行定时任务的线程池
+     */
+    private Pool pool = new Pool();
+
+    /**
+     * 集群模式，多个节点部署时保证每次触发只有一个节点执行
+     */
+    private Cluster cluster = new Cluster();
+
+    /**
+     * 定时任务的持久化存储，应用重启后自动加载
+     */
+    private Store store = new Store();
+
+    /**
+     * 定时任务的执行指标
+     */
+    private Metrics metrics = new Metrics();
+
+    public enum SchedulerType {
+        /**
+         * 使用Spring的TaskScheduler（ScheduledThreadPoolExecutor）
+         */
+        DEFAULT,
+        /**
+         * 使用分层时间轮。适用于定时任务数量非常多的场景
+         */
+        HASHED_WHEEL
+    }
+
+    public enum OverlapPolicy {
+        /**
+         * 上一次还没有执行完，跳过本次触发
+         */
+        SKIP,
+        /**
+         * 上一次还没有执行完，最多保留一次待执行的触发，在上一次执行完后立即执行
+         */
+        QUEUE_ONE,
+        /**
+         * 允许同时执行，最多max-concurrent-runs个
+         */
+        CONCURRENT
+    }
+
+    @Data
+    public static class Pool {
+
+        /**
+         * 核心线程数。默认：10
+         */
+        private int coreSize = 10;
+
+        /**
+         * 最大线程数。默认：10
+         */
+        private int maxSize = 10;
+
+        /**
+         * 非核心线程的空闲存活时间，单位：秒。默认：60
+         */
+        private long keepAliveSeconds = 60L;
+
+        /**
+         * 任务队列的类型。默认：linked
+         */
+        private QueueType queueType = QueueType.LINKED;
+
+        /**
+         * 任务队列的容量，queue-type = synchronous时无效。默认：1000
+         */
+        private int queueCapacity = 1000;
+
+        /**
+         * 线程池已满时的拒绝策略。默认：abort
+         */
+        private RejectionPolicy rejectionPolicy = RejectionPolicy.ABORT;
+
+        /**
+         * 延迟重试的间隔，单位：毫秒。只在rejection-policy = retry-later时有效，默认：1000
+         */
+        private long retryDelayMillis = 1000L;
+
+        /**
+         * 延迟重试的最大次数，超过后丢弃本次执行。只在rejection-policy = retry-later时有效，默认：3
+         */
+        private int maxRetries = 3;
+
+        /**
+         * 每个分组的最大并发数量。key = 分组名称，value = 最大并发数量
+         */
+        private Map<String, Integer> groupConcurrency = new HashMap<>();
+
+        /**
+         * 没有在group-concurrency中配置的分组的最大并发数量，小于等于0时不限制。默认：0
+         */
+        private int defaultGroupConcurrency = 0;
+
+        /**
+         * 应用关闭时，等待正在执行的任务完成的最长时间，单位：秒。默认：30
+         */
+        private long awaitTerminationSeconds = 30L;
+
+        /**
+         * 是否使用虚拟线程执行定时任务，适用于IO密集型的任务。需要JDK 21及以上版本，低版本的JDK会回退到普通的线程池。默认：false
+         * <p></p>
+         * 开启后core-size、max-size、keep-alive-seconds、queue-type、queue-capacity不再生效
+         */
+        private boolean virtualThreads = false;
+
+        /**
+         * 虚拟线程的最大并发数量，超过后按照rejection-policy处理。只在virtual-threads = true时有效，默认：1000
+         */
+        private int virtualThreadConcurrency = 1000;
+    }
+
+    @Data
+    public static class Cluster {
+
+        /**
+         * 集群模式。默认：none
+         */
+        private ClusterMode mode = ClusterMode.NONE;
+
+        /**
+         * 当前节点的id，不同节点不能重复。默认：进程名称（pid@hostname）加随机后缀
+         */
+        private String nodeId;
+
+        /**
+         * redis中key的前缀。默认：jack:task:
+         */
+        private String keyPrefix = "jack:task:";
+
+        /**
+         * 每次触发的租约时长，单位：毫秒。需要大于各个节点之间的时钟偏差，默认：60000
+         */
+        private long leaseMillis = 60000L;
+
+        /**
+         * 心跳间隔，单位：毫秒。只在mode = sharding时有效，默认：5000
+         */
+        private long heartbeatMillis = 5000L;
+
+        /**
+         * 超过此时长没有心跳的节点视为离线，单位：毫秒。只在mode = sharding时有效，默认：15000
+         */
+        private long nodeTimeoutMillis = 15000L;
+    }
+
+    @Data
+    public static class Store {
+
+        /**
+         * 存储类型。默认：none，不持久化。如果spring容器中存在DynamicTaskStore，则优先使用
+         */
+        private StoreType type = StoreType.NONE;
+
+        /**
+         * 重启期间错过的触发的默认补偿策略，可以在每个定时任务上单独指定。默认：fire-once
+         */
+        private MisfirePolicy misfirePolicy = MisfirePolicy.FIRE_ONCE;
+
+        /**
+         * misfire-policy = fire-all时，每个定时任务最多补偿执行的次数。默认：100
+         */
+        private int maxMisfireRuns = 100;
+
+        /**
+         * 启动时并行加载分区的线程数。默认：4
+         */
+        private int loadParallelism = 4;
+
+        /**
+         * redis中key的前缀。只在type = redis时有效，默认：jack:task:store:
+         */
+        private String keyPrefix = "jack:task:store:";
+
+        /**
+         * 数据库表名。只在type = jdbc时有效，默认：dynamic_task
+         */
+        private String tableName = "dynamic_task";
+    }
+
+    @Data
+    public static class Metrics {
+
+        /**
+         * 是否记录执行指标（延迟、排队时间、执行时间、成功/失败/拒绝次数）。默认：true
+         */
+        private boolean enabled = true;
+
+        /**
+         * 发布到Micrometer时是否带有task标签。每个定时任务都会创建一组meter，只在定时任务数量不多时开启。默认：false，只按分组统计
+         */
+        private boolean perTaskTags = false;
+    }
+
+    public enum StoreType {
+        /**
+         * 不持久化
+         */
+        NONE,
+        /**
+         * 保存到redis
+         */
+        REDIS,
+        /**
+         * 保存到关系型数据库，需要容器中存在DataSource
+         */
+        JDBC
+    }
+
+    public enum MisfirePolicy {
+        /**
+         * 错过了一次或多次触发，都只补偿执行一次
+         */
+        FIRE_ONCE,
+        /**
+         * 每一次错过的触发都补偿执行，最多补偿max-misfire-runs次
+         */
+        FIRE_ALL,
+        /**
+         * 不补偿，等待下一次触发
+         */
+        SKIP
+    }
+
+    public enum ClusterMode {
+        /**
+         * 不开启集群模式，每个节点都会执行
+         */
+        NONE,
+        /**
+         * 每次触发由抢到租约的节点执行。不支持fixed-delay，one-shot需要指定startTime
+         */
+        LEASE,
+        /**
+         * 按一致性哈希把定时任务分配给存活的节点，再由负责的节点抢占租约后执行。one-shot需要指定startTime
+         */
+        SHARDING
+    }
+
+    public enum QueueType {
+        /**
+         * 同步队列，不缓存任务，线程数达到上限后直接触发拒绝策略
+         */
+        SYNCHRONOUS,
+        /**
+         * 有界的链表队列
+         */
+        LINKED,
+        /**
+         * 有界的数组队列
+         */
+        ARRAY
+    }
+
+    public enum RejectionPolicy {
+        /**
+         * 丢弃本次执行，并打印错误日志
+         */
+        ABORT,
+        /**
+         * 由调度线程直接执行，从而减慢调度速度。
+         * <p></p>
+         * 调度线程（Spring的调度器只有一个线程，时间轮也只有一个工作线程）会被业务逻辑占用，期间所有定时任务都无法触发，慎用
+         */
+        CALLER_RUNS,
+        /**
+         * 丢弃队列中最早提交的任务，再放入本次执行。不支持同步队列
+         */
+        DISCARD_OLDEST,
+        /**
+         * 延迟一段时间后重试，超过最大重试次数后丢弃
+         */
+        RETRY_LATER
+    }
+}
@@ -12,6 +12,11 @@ public class MapperProperties {
      */
     boolean deleteTestData;
 
+    /**
+     * 删除测试数据时每批的行数，大于0时分批删除（参考DeleteTestData#batchSize）。默认：0，使用一条delete语句删除
+     */
+    int deleteBatchSize;
+
     /**
      * 接口响应格式中状态码的字段名称。默认：retCode
      */
@@ -0,0 +1,154 @@
+package com.jack.utils.config;
+
+import com.jack.utils.redis.CacheGenerations;
+import com.jack.utils.redis.CacheValueSerializers;
+import com.jack.utils.redis.CacheOptions;
+import com.jack.utils.redis.CacheRefresher;
+import com.jack.utils.redis.CacheReloader;
+import com.jack.utils.redis.CompressingRedisSerializer;
+import com.jack.utils.redis.EnhancedRedisCacheManager;
+import com.jack.utils.redis.MicrometerCacheMetricsListener;
+import com.jack.utils.redis.TwoLevelCacheManager;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.ClassUtils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RedisConfig}和{@link RedisConfigNew}共用的缓存管理器的创建逻辑
+ */
+final class RedisCacheSupport {
+
+    private RedisCacheSupport() {
+    }
+
+    /**
+     * 创建缓存管理器。开启了本地缓存时为二级缓存（{@link TwoLevelCacheManager}），否则只使用redis（{@link EnhancedRedisCacheManager}）
+     */
+    static RedisCacheManager createCacheManager(RedisConnectionFactory redisConnectionFactory, RedisProperties redisProperties,
+                                                BeanFactory beanFactory) {
+        RedisCacheWriter cacheWriter = RedisCacheWriter.nonLockingRedisCacheWriter(redisConnectionFactory);
+        RedisProperties.Generation generation = redisProperties.getGeneration();
+        CacheGenerations cacheGenerations = generation.isEnabled()
+                ? new CacheGenerations(redisConnectionFactory, generation.getKeyPrefix(), generation.getRefreshMillis(),
+                        generation.isSweep(), generation.getScanCount())
+                : null;
+        RedisCacheConfiguration defaultCacheConfig = getRedisCacheConfiguration(redisProperties, null, cacheGenerations);
+        Map<String, RedisCacheConfiguration> cacheConfigurationMap = getRedisCacheConfigurationMap(redisProperties, cacheGenerations); // 指定 key 策略
+        CacheOptions defaultCacheOptions = getCacheOptions(redisProperties, null);
+        Map<String, CacheOptions> cacheOptionsMap = new HashMap<>();
+        redisProperties.getCaches().forEach((cacheName, cache) ->
+                cacheOptionsMap.put(cacheName, getCacheOptions(redisProperties, cache)));
+
+        EnhancedRedisCacheManager cacheManager;
+        RedisProperties.Local local = redisProperties.getLocal();
+        if (local.isEnabled()) {
+            if (!ClassUtils.isPresent("com.github.benmanes.caffeine.cache.Caffeine", RedisCacheSupport.class.getClassLoader())) {
+                throw new IllegalStateException("jack.redis.local.enabled = true时需要引入caffeine依赖：com.github.ben-manes.caffeine:caffeine");
+            }
+            cacheManager = new TwoLevelCacheManager(redisConnectionFactory, cacheWriter, defaultCacheConfig, cacheConfigurationMap,
+                    defaultCacheOptions, cacheOptionsMap, local.getMaximumSize(), local.getTimeToLive(), local.getChannel());
+        } else {
+            cacheManager = new EnhancedRedisCacheManager(redisConnectionFactory, cacheWriter, defaultCacheConfig, cacheConfigurationMap,
+                    defaultCacheOptions, cacheOptionsMap);
+        }
+
+        boolean refreshAhead = defaultCacheOptions.getRefreshAheadRatio() > 0
+                || cacheOptionsMap.values().stream().anyMatch(cacheOptions -> cacheOptions.getRefreshAheadRatio() > 0);
+        if (refreshAhead) {
+            RedisProperties.RefreshAhead refreshAheadProperties = redisProperties.getRefreshAhead();
+            cacheManager.setCacheRefresher(new CacheRefresher(refreshAheadProperties.getPoolSize(), refreshAheadProperties.getQueueCapacity()));
+            cacheManager.setCacheReloaders(beanFactory.getBeanProvider(CacheReloader.class));
+        }
+        cacheManager.setCacheGenerations(cacheGenerations);
+
+        RedisProperties.Metrics metrics = redisProperties.getMetrics();
+        if (metrics.isEnabled()
+                && ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry", RedisCacheSupport.class.getClassLoader())) {
+            cacheManager.setCacheMetricsListener(MicrometerCacheMetricsListener.create(beanFactory, metrics.isHistogram()));
+        }
+        return cacheManager;
+    }
+
+    /**
+     * @param cache 为某个缓存单独指定的配置，为null时只使用全局的配置
+     */
+    private static CacheOptions getCacheOptions(RedisProperties redisProperties, RedisProperties.Cache cache) {
+        Integer timeToLiveJitter = cache != null && cache.getTimeToLiveJitter() != null
+                ? cache.getTimeToLiveJitter() : redisProperties.getTimeToLiveJitter();
+        RedisProperties.SingleFlight singleFlight = cache != null && cache.getSingleFlight() != null
+                ? cache.getSingleFlight() : redisProperties.getSingleFlight();
+
+        CacheOptions cacheOptions = new CacheOptions();
+        cacheOptions.setTimeToLiveJitterMillis(TimeUnit.SECONDS.toMillis(timeToLiveJitter));
+        cacheOptions.setSingleFlight(singleFlight.isEnabled());
+        cacheOptions.setLockTimeoutMillis(singleFlight.getLockTimeoutMillis());
+        cacheOptions.setWaitTimeoutMillis(singleFlight.getWaitTimeoutMillis());
+        cacheOptions.setStaleTimeToLiveMillis(TimeUnit.SECONDS.toMillis(singleFlight.getStaleTimeToLive()));
+        cacheOptions.setRefreshAheadRatio(cache != null && cache.getRefreshAheadRatio() != null
+                ? cache.getRefreshAheadRatio() : redisProperties.getRefreshAhead().getRatio());
+        Integer nullTimeToLive = cache != null && cache.getNullTimeToLive() != null
+                ? cache.getNullTimeToLive() : redisProperties.getNullTimeToLive();
+        cacheOptions.setNullTimeToLiveMillis(TimeUnit.SECONDS.toMillis(nullTimeToLive));
+        RedisProperties.BloomFilter bloomFilter = redisProperties.getBloomFilter();
+        cacheOptions.setBloomFilter(cache != null && cache.getBloomFilter() != null ? cache.getBloomFilter() : bloomFilter.isEnabled());
+        cacheOptions.setBloomFilterKeyPrefix(bloomFilter.getKeyPrefix());
+        cacheOptions.setBloomFilterExpectedInsertions(bloomFilter.getExpectedInsertions());
+        cacheOptions.setBloomFilterFalsePositiveProbability(bloomFilter.getFalsePositiveProbability());
+        RedisProperties.HotKey hotKey = redisProperties.getHotKey();
+        cacheOptions.setHotKey(cache != null && cache.getHotKey() != null ? cache.getHotKey() : hotKey.isEnabled());
+        cacheOptions.setHotKeySampleRate(hotKey.getSampleRate());
+        cacheOptions.setHotKeyThreshold(hotKey.getThreshold());
+        cacheOptions.setHotKeyWindowMillis(TimeUnit.SECONDS.toMillis(hotKey.getWindow()));
+        cacheOptions.setHotKeyLocalTimeToLiveMillis(hotKey.getLocalTimeToLiveMillis());
+        cacheOptions.setHotKeyMaxKeys(hotKey.getMaxKeys());
+        return cacheOptions;
+    }
+
+    private static Map<String, RedisCacheConfiguration> getRedisCacheConfigurationMap(RedisProperties redisProperties,
+                                                                                      CacheGenerations cacheGenerations) {
+        Map<String, RedisCacheConfiguration> redisCacheConfigurationMap = new HashMap<>();
+        //SsoCache和BasicDataCache进行过期时间配置
+        redisCacheConfigurationMap.put("initCache",
+                getRedisCacheConfiguration(redisProperties, null, cacheGenerations));
+        redisProperties.getCaches().forEach((cacheName, cache) ->
+                redisCacheConfigurationMap.put(cacheName, getRedisCacheConfiguration(redisProperties, cache, cacheGenerations)));
+        return redisCacheConfigurationMap;
+    }
+
+    /**
+     * @param cache             为某个缓存单独指定的配置，为null时只使用全局的配置
+     * @param cacheGenerations  缓存的版本号，不为null时key前缀包含版本号
+     */
+    private static RedisCacheConfiguration getRedisCacheConfiguration(RedisProperties redisProperties, RedisProperties.Cache cache,
+                                                                      CacheGenerations cacheGenerations) {
+        RedisSerializer<Object> valueSerializer = CacheValueSerializers.create(redisProperties.getSerializer());
+        RedisProperties.Compression compression = cache != null && cache.getCompression() != null
+                ? cache.getCompression() : redisProperties.getCompression();
+        if (compression.isEnabled()) {
+            valueSerializer = new CompressingRedisSerializer(valueSerializer, compression.getThreshold());
+        }
+
+        int timeToLive = cache != null && cache.getTimeToLive() != null ? cache.getTimeToLive() : redisProperties.getTimeToLive();
+        RedisCacheConfiguration redisCacheConfiguration = RedisCacheConfiguration.defaultCacheConfig();
+        redisCacheConfiguration = redisCacheConfiguration.serializeValuesWith(
+                RedisSerializationContext
+                        .SerializationPair
+                        .fromSerializer(valueSerializer)
+        ).entryTtl(Duration.ofSeconds(timeToLive));
+        if (cacheGenerations != null) {
+            redisCacheConfiguration = redisCacheConfiguration.computePrefixWith(cacheGenerations);
+        }
+
+        return redisCacheConfiguration;
+    }
+}
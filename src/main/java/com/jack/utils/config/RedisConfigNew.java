@@ -1,27 +1,26 @@
 package com.jack.utils.config;
 
-import com.fasterxml.jackson.annotation.JsonAutoDetect;
-import com.fasterxml.jackson.annotation.PropertyAccessor;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jack.utils.redis.BulkCacheInterceptor;
+import com.jack.utils.redis.BulkCacheable;
 import com.jack.utils.redis.SimpleKeyGenerator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.context.annotation.Role;
 import org.springframework.data.redis.cache.RedisCacheManager;
-import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
-import org.springframework.data.redis.serializer.RedisSerializationContext;
-
-import java.time.Duration;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * 兼容高版本的Spring boot，例如3.0.5
@@ -42,44 +41,28 @@ public class RedisConfigNew {
      */
     @Bean
     public SimpleKeyGenerator simpleKeyGenerator() {
-        return new SimpleKeyGenerator();
+        return new SimpleKeyGenerator(redisProperties.getKeyGeneratorMode());
     }
 
     /**
-     * redis缓存管理器，设置redis缓存过期时间
+     * {@link BulkCacheable}注解的切面，由{@link EnableCaching}注册的自动代理生效
      */
-    @ConditionalOnMissingBean
     @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory) {
-        log.info("===>注入RedisCacheManager");
-        return new RedisCacheManager(
-                RedisCacheWriter.nonLockingRedisCacheWriter(redisConnectionFactory),
-                this.getRedisCacheConfigurationWithTtl(),
-                this.getRedisCacheConfigurationMap() // 指定 key 策略
-        );
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor bulkCacheableAdvisor(ObjectProvider<CacheManager> cacheManagerProvider,
+                                               ObjectProvider<SimpleKeyGenerator> keyGeneratorProvider) {
+        return new DefaultPointcutAdvisor(new AnnotationMatchingPointcut(null, BulkCacheable.class, true),
+                new BulkCacheInterceptor(cacheManagerProvider, keyGeneratorProvider));
     }
 
-    private Map<String, RedisCacheConfiguration> getRedisCacheConfigurationMap() {
-        Map<String, RedisCacheConfiguration> redisCacheConfigurationMap = new HashMap<>();
-        //SsoCache和BasicDataCache进行过期时间配置
-        redisCacheConfigurationMap.put("initCache",
-                this.getRedisCacheConfigurationWithTtl());
-        return redisCacheConfigurationMap;
-    }
-
-    private RedisCacheConfiguration getRedisCacheConfigurationWithTtl() {
-        Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer<>(Object.class);
-        ObjectMapper om = new ObjectMapper();
-        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        om.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
-        jackson2JsonRedisSerializer.setObjectMapper(om);
-        RedisCacheConfiguration redisCacheConfiguration = RedisCacheConfiguration.defaultCacheConfig();
-        redisCacheConfiguration = redisCacheConfiguration.serializeValuesWith(
-                RedisSerializationContext
-                        .SerializationPair
-                        .fromSerializer(jackson2JsonRedisSerializer)
-        ).entryTtl(Duration.ofSeconds(redisProperties.getTimeToLive()));
-
-        return redisCacheConfiguration;
+    /**
+     * redis缓存管理器，设置redis缓存过期时间。开启jack.redis.local.enabled时为二级缓存：本地缓存 + redis。
+     * 引入了Micrometer并且容器中存在MeterRegistry时，按缓存名称发布命中率、耗时等指标
+     */
+    @ConditionalOnMissingBean
+    @Bean
+    public RedisCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory, BeanFactory beanFactory) {
+        log.info("===>注入RedisCacheManager");
+        return RedisCacheSupport.createCacheManager(redisConnectionFactory, redisProperties, beanFactory);
     }
 }
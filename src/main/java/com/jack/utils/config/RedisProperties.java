@@ -3,6 +3,9 @@ package com.jack.utils.config;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @ConfigurationProperties(prefix = "jack.redis")
 @Data
 public class RedisProperties {
@@ -10,4 +13,353 @@ public class RedisProperties {
      * redis缓存过期时间。单位：秒
      */
     private int timeToLive = 60;
+
+    /**
+     * redis缓存过期时间的随机抖动，实际过期时间在[timeToLive, timeToLive + timeToLiveJitter]之间，
+     * 避免同时写入的缓存同时过期。单位：秒。默认：0，不抖动
+     */
+    private int timeToLiveJitter = 0;
+
+    /**
+     * 缓存未命中时跨节点合并加载
+     */
+    private SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 缓存快要过期时提前异步刷新
+     */
+    private RefreshAhead refreshAhead = new RefreshAhead();
+
+    /**
+     * simpleKeyGenerator生成key的方式。默认：simple
+     */
+    private KeyGeneratorMode keyGeneratorMode = KeyGeneratorMode.SIMPLE;
+
+    /**
+     * 缓存值的序列化方式。默认：json
+     */
+    private SerializerType serializer = SerializerType.JSON;
+
+    /**
+     * 缓存值的压缩，对所有缓存生效，可以通过caches为每个缓存单独指定
+     */
+    private Compression compression = new Compression();
+
+    /**
+     * 为每个缓存（key为cacheName）单独指定的配置，没有指定的配置项使用全局的配置
+     */
+    private Map<String, Cache> caches = new LinkedHashMap<>();
+
+    /**
+     * 本地缓存（一级缓存）
+     */
+    private Local local = new Local();
+
+    /**
+     * 空值（方法返回null）的过期时间，通常比timeToLive短。单位：秒。默认：0，与timeToLive相同
+     */
+    private int nullTimeToLive = 0;
+
+    /**
+     * 布隆过滤器，拦截一定不存在的key
+     */
+    private BloomFilter bloomFilter = new BloomFilter();
+
+    /**
+     * 缓存的监控指标
+     */
+    private Metrics metrics = new Metrics();
+
+    /**
+     * 热点key探测
+     */
+    private HotKey hotKey = new HotKey();
+
+    /**
+     * 应用启动时的缓存预热
+     */
+    private WarmUp warmUp = new WarmUp();
+
+    /**
+     * 按版本号清空缓存
+     */
+    private Generation generation = new Generation();
+
+    @Data
+    public static class Local {
+        /**
+         * 是否开启本地缓存。开启后为二级缓存：本地缓存（caffeine） + redis，需要引入caffeine依赖。默认：false
+         */
+        private boolean enabled = false;
+
+        /**
+         * 每个缓存（cacheName）在本地最多保存的数量。默认：10000
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 本地缓存过期时间。单位：秒，应不大于redis缓存过期时间。节点之间的通知丢失时，本地缓存最多在这个时间后失效。默认：10
+         */
+        private int timeToLive = 10;
+
+        /**
+         * 通知其他节点删除本地缓存的redis频道
+         */
+        private String channel = "jack:cache:invalidation";
+    }
+
+    @Data
+    public static class BloomFilter {
+        /**
+         * 是否为所有缓存开启布隆过滤器，也可以通过caches为某个缓存单独开启。开启后需要通过EnhancedRedisCache#addKnownKey写入已经存在的key，
+         * 不在布隆过滤器中的key直接返回null，不再查询数据库。默认：false
+         */
+        private boolean enabled = false;
+
+        /**
+         * 保存布隆过滤器的redis key前缀
+         */
+        private String keyPrefix = "jack:cache:bloom:";
+
+        /**
+         * 每个缓存预计的key的数量。默认：1000000
+         */
+        private long expectedInsertions = 1000000L;
+
+        /**
+         * 期望的误判率。默认：0.01
+         */
+        private double falsePositiveProbability = 0.01D;
+    }
+
+    @Data
+    public static class Metrics {
+        /**
+         * 是否按缓存名称发布指标（命中/未命中、写入/删除次数、读写耗时、缓存值大小）到Micrometer，
+         * 需要引入Micrometer并且容器中存在MeterRegistry。默认：true
+         */
+        private boolean enabled = true;
+
+        /**
+         * 读写耗时和缓存值大小是否发布直方图，用于计算分位数。默认：true
+         */
+        private boolean histogram = true;
+    }
+
+    @Data
+    public static class HotKey {
+        /**
+         * 是否为所有缓存开启热点key探测，也可以通过caches为某个缓存单独开启。开启后读取次数超过阈值的key在当前节点保存短时间的副本，
+         * 不再访问redis。默认：false
+         */
+        private boolean enabled = false;
+
+        /**
+         * 采样率，(0, 1]，只有被采样的读取参与计数。默认：0.1
+         */
+        private double sampleRate = 0.1D;
+
+        /**
+         * 滑动窗口内的读取次数达到此值时视为热点。默认：1000
+         */
+        private long threshold = 1000L;
+
+        /**
+         * 滑动窗口的长度。单位：秒。默认：10
+         */
+        private int window = 10;
+
+        /**
+         * 热点key本地副本的过期时间，其他节点修改缓存后最多在这个时间后生效。单位：毫秒。默认：1000
+         */
+        private long localTimeToLiveMillis = 1000L;
+
+        /**
+         * 每个缓存最多保存的热点key数量。默认：100
+         */
+        private int maxKeys = 100;
+    }
+
+    @Data
+    public static class WarmUp {
+        /**
+         * 是否开启。开启后应用启动时并行执行所有的CacheWarmUpProvider。默认：true
+         */
+        private boolean enabled = true;
+
+        /**
+         * 并行预热的线程数。默认：4
+         */
+        private int poolSize = 4;
+
+        /**
+         * 等待预热完成的最长时间，超时后应用进入就绪状态，未完成的预热继续在后台执行。单位：秒。默认：60
+         */
+        private long timeout = 60L;
+
+        /**
+         * 每次pipeline写入redis的数量。默认：500
+         */
+        private int batchSize = 500;
+
+        /**
+         * 开启了本地缓存时，是否同时写入本地缓存。默认：false
+         */
+        private boolean populateLocal = false;
+    }
+
+    @Data
+    public static class Generation {
+        /**
+         * 是否开启。开启后缓存的key包含版本号：{cacheName}::g{generation}::{key}，{@code @CacheEvict(allEntries = true)}只递增版本号，
+         * 不再使用KEYS + DEL。开启或关闭前保存的缓存不会再被读到，等待过期。默认：false
+         */
+        private boolean enabled = false;
+
+        /**
+         * 保存版本号的redis key前缀
+         */
+        private String keyPrefix = "jack:cache:generation:";
+
+        /**
+         * 各个节点在本地缓存版本号的时间，其他节点清空缓存后最多在这个时间后生效（开启了本地缓存时收到通知立即生效）。
+         * 为0时每次读写都从redis读取版本号。单位：毫秒。默认：1000
+         */
+        private long refreshMillis = 1000L;
+
+        /**
+         * 清空缓存后是否在后台通过SCAN + UNLINK删除旧版本的缓存，不开启时旧版本的缓存等待过期。集群模式下不支持。默认：false
+         */
+        private boolean sweep = false;
+
+        /**
+         * 删除旧版本的缓存时，每次SCAN的COUNT。默认：1000
+         */
+        private int scanCount = 1000;
+    }
+
+    @Data
+    public static class Compression {
+        /**
+         * 是否压缩缓存值。默认：false
+         */
+        private boolean enabled = false;
+
+        /**
+         * 压缩阈值，序列化之后的字节数达到此值时使用Deflate压缩。默认：1024
+         */
+        private int threshold = 1024;
+    }
+
+    @Data
+    public static class SingleFlight {
+        /**
+         * 是否开启。开启后{@code @Cacheable(sync = true)}的缓存未命中时，只有拿到redis锁的节点执行加载，其他节点等待。默认：false
+         */
+        private boolean enabled = false;
+
+        /**
+         * 加载锁的过期时间，应大于加载数据的耗时。单位：毫秒。默认：3000
+         */
+        private long lockTimeoutMillis = 3000L;
+
+        /**
+         * 等待其他节点加载的最长时间，超时后自行加载。单位：毫秒。默认：3000
+         */
+        private long waitTimeoutMillis = 3000L;
+
+        /**
+         * 缓存过期后继续保留旧数据的时间，其他节点加载期间直接返回旧数据。单位：秒。默认：0，不保留，等待加载完成
+         */
+        private int staleTimeToLive = 0;
+    }
+
+    @Data
+    public static class RefreshAhead {
+        /**
+         * 提前刷新的比例：读取时剩余的过期时间不足timeToLive * ratio时异步刷新，只对{@code @Cacheable(sync = true)}生效。
+         * 例如0.2：过期前的最后20%时间内读取时刷新。默认：0，不提前刷新。
+         * 只刷新注册了{@link com.jack.utils.redis.CacheReloader}的缓存
+         */
+        private double ratio = 0D;
+
+        /**
+         * 刷新线程的数量，所有缓存共用。默认：2
+         */
+        private int poolSize = 2;
+
+        /**
+         * 等待刷新的最大数量，超过时忽略本次刷新。默认：1000
+         */
+        private int queueCapacity = 1000;
+    }
+
+    @Data
+    public static class Cache {
+        /**
+         * 过期时间。单位：秒，为null时使用全局的配置
+         */
+        private Integer timeToLive;
+
+        /**
+         * 过期时间的随机抖动。单位：秒，为null时使用全局的配置
+         */
+        private Integer timeToLiveJitter;
+
+        /**
+         * 缓存值的压缩，为null时使用全局的配置
+         */
+        private Compression compression;
+
+        /**
+         * 跨节点合并加载，为null时使用全局的配置
+         */
+        private SingleFlight singleFlight;
+
+        /**
+         * 提前刷新的比例，为null时使用全局的配置
+         */
+        private Double refreshAheadRatio;
+
+        /**
+         * 空值的过期时间。单位：秒，为null时使用全局的配置
+         */
+        private Integer nullTimeToLive;
+
+        /**
+         * 是否开启布隆过滤器，为null时使用全局的配置
+         */
+        private Boolean bloomFilter;
+
+        /**
+         * 是否开启热点key探测，为null时使用全局的配置
+         */
+        private Boolean hotKey;
+    }
+
+    public enum SerializerType {
+        /**
+         * json，带有类名，可读性好
+         */
+        JSON,
+        /**
+         * smile：二进制的json，与json的对象结构相同但是体积更小，序列化更快。需要引入jackson-dataformat-smile依赖
+         */
+        SMILE,
+        /**
+         * jdk序列化，缓存的对象需要实现{@link java.io.Serializable}
+         */
+        JDK
+    }
+
+    public enum KeyGeneratorMode {
+        /**
+         * 方法名 + 参数，例如：SimpleKey [getById,42]
+         */
+        SIMPLE,
+        /**
+         * 类名 + 方法名 + 方法签名的摘要 + 紧凑的参数，复杂参数使用摘要，长度有上限，例如：UserService.getById~2ae3keuitge0e:42
+         */
+        COMPACT
+    }
 }
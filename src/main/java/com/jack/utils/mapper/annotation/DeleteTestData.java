@@ -91,4 +91,13 @@ public @interface DeleteTestData {
      * @return  某个值
      */
     String like() default "";
+
+    /**
+     * 分批删除时每批的行数，大于0时按主键范围遍历整个表，每条delete语句（一个单独的事务）最多删除batchSize行，
+     * 适合数据量很大的表，避免一条语句执行很久并且长时间锁表。
+     * <p></p>
+     * 为0时使用配置项jack.mapper.delete-batch-size，仍为0时使用一条delete语句删除
+     * @return  每批的行数
+     */
+    int batchSize() default 0;
 }
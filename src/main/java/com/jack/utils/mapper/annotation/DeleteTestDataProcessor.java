@@ -13,15 +13,21 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.ReflectionUtils;
 
 import javax.annotation.Resource;
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -34,9 +40,17 @@ public class DeleteTestDataProcessor {
      */
     private static final String PK_NAME = "id";
 
+    /**
+     * 分批删除时，输出进度日志的间隔
+     */
+    private static final long PROGRESS_LOG_INTERVAL_MILLIS = 10000L;
+
     @Resource
     private ApplicationContext applicationContext;
 
+    @Resource
+    private MapperProperties mapperProperties;
+
     /**
      * 监听spring应用上下文started事件。完成测试数据删除操作。
      */
@@ -74,23 +88,31 @@ public class DeleteTestDataProcessor {
         }
 
         BaseMapper<?> baseMapper = (BaseMapper<?>) applicationContext.getBean(entry.getKey());
-        QueryWrapper queryWrapper = assembleQueryWrapper(baseMapper);
-        baseMapper.delete(queryWrapper);
-    }
-
-    /**
-     * 根据删除测试数据相关的注解，组装删除数据的sql语句
-     * @param baseMapperBean    数据库访问对象
-     * @return  删除数据的sql语句
-     */
-    private QueryWrapper assembleQueryWrapper(BaseMapper<?> baseMapperBean) {
-        Class targetMapperClazz = (Class) baseMapperBean.getClass().getGenericInterfaces()[0];
+        Class targetMapperClazz = (Class) baseMapper.getClass().getGenericInterfaces()[0];
         DeleteTestData deleteTestData = (DeleteTestData) targetMapperClazz.getAnnotation(DeleteTestData.class);
         if (!deleteTestData.confirm()) {
             throw new IllegalStateException("请确认删除测试数据，以及保留数据的规则正确后，将DeleteTestData注解的confirm设置为true。请检查"
                     + targetMapperClazz.getName());
         }
 
+        QueryWrapper selectQueryWrapper = assembleSelectQueryWrapper(deleteTestData, targetMapperClazz);
+        int batchSize = deleteTestData.batchSize() > 0 ? deleteTestData.batchSize() : mapperProperties.getDeleteBatchSize();
+        if (batchSize > 0) {
+            deleteInBatches(deleteTestData, selectQueryWrapper, baseMapper, batchSize);
+            return;
+        }
+
+        baseMapper.delete(getDeleteQueryBySelectQuery(deleteTestData, selectQueryWrapper, baseMapper));
+    }
+
+    /**
+     * 根据删除测试数据相关的注解，组装查询要保留的数据的sql语句
+     * @param deleteTestData    删除测试数据的注解
+     * @param targetMapperClazz Mapper接口
+     * @return  查询要保留的数据的sql语句
+     */
+    private QueryWrapper assembleSelectQueryWrapper(DeleteTestData deleteTestData, Class targetMapperClazz) {
+
         QueryWrapper selectQueryWrapper = new QueryWrapper();
         selectQueryWrapper.apply("1 = 2");
         if (deleteTestData.ids() != null && deleteTestData.ids().length > 0) {
@@ -99,7 +121,7 @@ public class DeleteTestDataProcessor {
 
         if (StringUtils.isBlank(deleteTestData.column())) {
             log.debug("===>{}: DeleteTestData 'column' is empty. will ignore other property except 'ids'", targetMapperClazz.getName());
-            return getDeleteQueryBySelectQuery(deleteTestData, selectQueryWrapper, baseMapperBean);
+            return selectQueryWrapper;
         }
 
         if (StringUtils.isNotBlank(deleteTestData.equals())) {
@@ -138,7 +160,7 @@ public class DeleteTestDataProcessor {
             ((QueryWrapper)selectQueryWrapper.or()).like(deleteTestData.column(), deleteTestData.like());
         }
 
-        return getDeleteQueryBySelectQuery(deleteTestData, selectQueryWrapper, baseMapperBean);
+        return selectQueryWrapper;
     }
 
     // 过滤掉要保留的数据，返回要删除数据对应的sql
@@ -146,9 +168,102 @@ public class DeleteTestDataProcessor {
     private QueryWrapper getDeleteQueryBySelectQuery(DeleteTestData deleteTestData,
                                                      QueryWrapper selectQueryWrapper,
                                                      BaseMapper<?> baseMapper) {
-        List needDataList;
+        List needDataList = selectNeedData(deleteTestData, baseMapper, () -> baseMapper.selectList(selectQueryWrapper));
+
+        QueryWrapper deleteQueryWrapper = new QueryWrapper();
+        if (CollectionUtils.isNotEmpty(needDataList)) {
+            Object item = needDataList.get(0);
+            Field idField = ReflectionUtils.findField(item.getClass(), PK_NAME);
+            idField.setAccessible(true);
+
+            List idList = new ArrayList();
+            for (Object entity : needDataList) {
+                idList.add(idField.get(entity));
+            }
+
+            deleteQueryWrapper.notIn(PK_NAME, idList);
+        }
+
+        return deleteQueryWrapper;
+    }
+
+    /**
+     * 分批删除：只查询要保留的数据的主键，排序后保存在内存中；然后按主键从小到大遍历整个表（where id > 上一批的最大id order by id limit batchSize），
+     * 每一批过滤掉要保留的主键之后，使用一条delete语句在单独的事务中删除，避免一条语句执行很久并且长时间锁表。
+     * <p></p>
+     * 使用了limit语法，适用于mysql
+     */
+    private void deleteInBatches(DeleteTestData deleteTestData,
+                                 QueryWrapper selectQueryWrapper,
+                                 BaseMapper<?> baseMapper,
+                                 int batchSize) {
+        String mapperName = ((Class) baseMapper.getClass().getGenericInterfaces()[0]).getName();
+        selectQueryWrapper.select(PK_NAME);
+        RetainedIds retainedIds = new RetainedIds(selectNeedData(deleteTestData, baseMapper,
+                () -> baseMapper.selectObjs(selectQueryWrapper)));
+        log.info("===>{}: 分批删除测试数据，每批{}行，保留{}行", mapperName, batchSize, retainedIds.size());
+
+        TransactionTemplate transactionTemplate = createTransactionTemplate();
+        long startTime = System.currentTimeMillis();
+        long lastLogTime = startTime;
+        long scannedCount = 0;
+        long deletedCount = 0;
+        Object lastId = null;
+        for (;;) {
+            QueryWrapper pageQueryWrapper = new QueryWrapper();
+            pageQueryWrapper.select(PK_NAME);
+            if (lastId != null) {
+                pageQueryWrapper.gt(PK_NAME, lastId);
+            }
+            pageQueryWrapper.orderByAsc(PK_NAME);
+            pageQueryWrapper.last("limit " + batchSize);
+            List<Object> idList = baseMapper.selectObjs(pageQueryWrapper);
+            if (CollectionUtils.isEmpty(idList)) {
+                break;
+            }
+
+            scannedCount += idList.size();
+            lastId = idList.get(idList.size() - 1);
+            List deleteIdList = idList.stream().filter(id -> !retainedIds.contains(id)).collect(Collectors.toList());
+            if (!deleteIdList.isEmpty()) {
+                Integer deleted = transactionTemplate == null ? baseMapper.deleteBatchIds(deleteIdList)
+                        : transactionTemplate.execute(status -> baseMapper.deleteBatchIds(deleteIdList));
+                deletedCount += deleted == null ? 0 : deleted;
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastLogTime >= PROGRESS_LOG_INTERVAL_MILLIS) {
+                lastLogTime = now;
+                log.info("===>{}: 删除测试数据中，已扫描{}行，已删除{}行，当前主键{}", mapperName, scannedCount, deletedCount, lastId);
+            }
+
+            if (idList.size() < batchSize) {
+                break;
+            }
+        }
+
+        log.info("===>{}: 删除测试数据完成，共扫描{}行，删除{}行，耗时{}ms", mapperName, scannedCount, deletedCount,
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 每一批在新的事务中删除，不加入processStartedEvent的事务。容器中没有事务管理器时返回null，每条delete语句自动提交
+     */
+    private TransactionTemplate createTransactionTemplate() {
+        PlatformTransactionManager transactionManager = applicationContext.getBeanProvider(PlatformTransactionManager.class).getIfAvailable();
+        if (transactionManager == null) {
+            return null;
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate;
+    }
+
+    // 查询要保留的数据，column属性对应的字段不存在时给出提示
+    private <T> T selectNeedData(DeleteTestData deleteTestData, BaseMapper<?> baseMapper, Supplier<T> select) {
         try {
-            needDataList = baseMapper.selectList(selectQueryWrapper);
+            return select.get();
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             if (e.getMessage().contains("Unknown column")) {
@@ -160,21 +275,35 @@ public class DeleteTestDataProcessor {
 
             throw e;
         }
+    }
 
-        QueryWrapper deleteQueryWrapper = new QueryWrapper();
-        if (CollectionUtils.isNotEmpty(needDataList)) {
-            Object item = needDataList.get(0);
-            Field idField = ReflectionUtils.findField(item.getClass(), PK_NAME);
-            idField.setAccessible(true);
+    /**
+     * 要保留的数据的主键，排序后保存在数组中，通过二分查找判断是否保留。主键为数字时使用long[]，否则使用String[]
+     */
+    private static final class RetainedIds {
+        private final long[] numberIds;
+        private final String[] stringIds;
 
-            List idList = new ArrayList();
-            for (Object entity : needDataList) {
-                idList.add(idField.get(entity));
+        RetainedIds(List<Object> idList) {
+            if (idList.stream().allMatch(id -> id instanceof Number)) {
+                numberIds = idList.stream().mapToLong(id -> ((Number) id).longValue()).toArray();
+                Arrays.sort(numberIds);
+                stringIds = null;
+            } else {
+                numberIds = null;
+                stringIds = idList.stream().map(String::valueOf).sorted().toArray(String[]::new);
             }
+        }
 
-            deleteQueryWrapper.notIn(PK_NAME, idList);
+        boolean contains(Object id) {
+            if (numberIds != null) {
+                return id instanceof Number && Arrays.binarySearch(numberIds, ((Number) id).longValue()) >= 0;
+            }
+            return Arrays.binarySearch(stringIds, String.valueOf(id)) >= 0;
         }
 
-        return deleteQueryWrapper;
+        int size() {
+            return numberIds != null ? numberIds.length : stringIds.length;
+        }
     }
 }
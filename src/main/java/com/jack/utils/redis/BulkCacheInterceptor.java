@@ -0,0 +1,156 @@
+package com.jack.utils.redis;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * {@link BulkCacheable}的实现。缓存为{@link EnhancedRedisCache}时批量读写，否则逐个读写
+ */
+public class BulkCacheInterceptor implements MethodInterceptor {
+
+    private final ObjectProvider<CacheManager> cacheManagerProvider;
+    private final ObjectProvider<SimpleKeyGenerator> keyGeneratorProvider;
+
+    public BulkCacheInterceptor(ObjectProvider<CacheManager> cacheManagerProvider,
+                                ObjectProvider<SimpleKeyGenerator> keyGeneratorProvider) {
+        this.cacheManagerProvider = cacheManagerProvider;
+        this.keyGeneratorProvider = keyGeneratorProvider;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Class<?> targetClass = invocation.getThis() != null ? AopUtils.getTargetClass(invocation.getThis()) : null;
+        Method method = AopUtils.getMostSpecificMethod(invocation.getMethod(), targetClass);
+        BulkCacheable bulkCacheable = AnnotatedElementUtils.findMergedAnnotation(method, BulkCacheable.class);
+        Object[] args = invocation.getArguments();
+        if (bulkCacheable == null || !(args[bulkCacheable.argIndex()] instanceof Collection)) {
+            return invocation.proceed();
+        }
+
+        Collection<?> ids = (Collection<?>) args[bulkCacheable.argIndex()];
+        Class<?> returnType = method.getReturnType();
+        Assert.isTrue(Map.class.isAssignableFrom(returnType) || StringUtils.hasText(bulkCacheable.keyProperty()),
+                "BulkCacheable方法的返回值为集合时需要指定keyProperty：" + method);
+
+        // id -> 缓存的key
+        SimpleKeyGenerator keyGenerator = keyGeneratorProvider.getIfAvailable(SimpleKeyGenerator::new);
+        Map<Object, Object> keys = new LinkedHashMap<>();
+        for (Object id : ids) {
+            Object[] keyArgs = args.clone();
+            keyArgs[bulkCacheable.argIndex()] = id;
+            keys.put(id, keyGenerator.generate(invocation.getThis(), method, keyArgs));
+        }
+
+        Cache cache = getCache(bulkCacheable.value());
+        Map<Object, Object> values = new HashMap<>();
+        getAll(cache, keys.values()).forEach((key, valueWrapper) -> values.put(key, valueWrapper.get()));
+
+        List<Object> missingIds = new ArrayList<>();
+        keys.forEach((id, key) -> {
+            if (!values.containsKey(key)) {
+                missingIds.add(id);
+            }
+        });
+        if (!missingIds.isEmpty()) {
+            args[bulkCacheable.argIndex()] = ids instanceof Set ? new LinkedHashSet<>(missingIds) : missingIds;
+            Map<Object, Object> loaded = toMap(invocation.proceed(), bulkCacheable.keyProperty());
+            Map<Object, Object> loadedValues = new LinkedHashMap<>();
+            loaded.forEach((id, value) -> {
+                Object key = keys.get(id);
+                if (key != null) {
+                    loadedValues.put(key, value);
+                }
+            });
+            if (isNegativeCaching(cache)) {
+                // 查询不到的id缓存空值，在nullTimeToLive内不再查询
+                for (Object id : missingIds) {
+                    if (!loaded.containsKey(id)) {
+                        loadedValues.put(keys.get(id), null);
+                    }
+                }
+            }
+            putAll(cache, loadedValues);
+            values.putAll(loadedValues);
+        }
+
+        if (Map.class.isAssignableFrom(returnType)) {
+            Map<Object, Object> result = new LinkedHashMap<>();
+            keys.forEach((id, key) -> {
+                if (values.get(key) != null) {
+                    result.put(id, values.get(key));
+                }
+            });
+            return result;
+        }
+        Collection<Object> result = Set.class.isAssignableFrom(returnType) ? new LinkedHashSet<>() : new ArrayList<>();
+        keys.forEach((id, key) -> {
+            if (values.get(key) != null) {
+                result.add(values.get(key));
+            }
+        });
+        return result;
+    }
+
+    private Cache getCache(String cacheName) {
+        Cache cache = cacheManagerProvider.getObject().getCache(cacheName);
+        Assert.notNull(cache, "找不到缓存：" + cacheName);
+        return cache instanceof TransactionAwareCacheDecorator ? ((TransactionAwareCacheDecorator) cache).getTargetCache() : cache;
+    }
+
+    private static Map<Object, Cache.ValueWrapper> getAll(Cache cache, Collection<Object> keys) {
+        if (cache instanceof EnhancedRedisCache) {
+            return ((EnhancedRedisCache) cache).getAll(keys);
+        }
+
+        Map<Object, Cache.ValueWrapper> result = new HashMap<>();
+        for (Object key : keys) {
+            Cache.ValueWrapper valueWrapper = cache.get(key);
+            if (valueWrapper != null) {
+                result.put(key, valueWrapper);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isNegativeCaching(Cache cache) {
+        return cache instanceof EnhancedRedisCache && ((EnhancedRedisCache) cache).isAllowNullValues()
+                && ((EnhancedRedisCache) cache).getOptions().getNullTimeToLiveMillis() > 0;
+    }
+
+    private static void putAll(Cache cache, Map<Object, Object> values) {
+        if (cache instanceof EnhancedRedisCache) {
+            ((EnhancedRedisCache) cache).putAll(values);
+        } else {
+            values.forEach(cache::put);
+        }
+    }
+
+    /**
+     * 方法的返回值转换为id -> 数据
+     */
+    private static Map<Object, Object> toMap(Object result, String keyProperty) {
+        Map<Object, Object> map = new LinkedHashMap<>();
+        if (result instanceof Map) {
+            map.putAll((Map<?, ?>) result);
+        } else if (result instanceof Collection) {
+            for (Object element : (Collection<?>) result) {
+                if (element != null) {
+                    map.put(new BeanWrapperImpl(element).getPropertyValue(keyProperty), element);
+                }
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,39 @@
+package com.jack.utils.redis;
+
+import java.lang.annotation.*;
+
+/**
+ * 按元素缓存参数为id集合的查询方法，例如{@code Map<Long, User> getUsersByIds(List<Long> ids)}。
+ * <p></p>
+ * 与{@code @Cacheable}把整个id集合作为一个缓存不同，每个id单独缓存：先通过一次MGET读取所有id的缓存，
+ * 只用未命中的id调用方法，再通过一次pipeline写入查询结果。缓存的key由{@link SimpleKeyGenerator}生成
+ * （与jack.redis.key-generator-mode一致），只是把id集合参数替换为单个id。
+ * <p></p>
+ * 方法的返回值可以是：
+ * <ul>
+ *     <li>{@link java.util.Map}：key为id，value为对应的数据</li>
+ *     <li>{@link java.util.Collection}（List、Set）：需要通过{@link #keyProperty()}指定元素中id的属性名</li>
+ * </ul>
+ * 方法没有返回的id不会缓存，也不会出现在返回值中。返回值中元素的顺序与参数中id的顺序相同。
+ * 方法返回的id与参数中的id需要是相同的类型，否则无法对应。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface BulkCacheable {
+
+    /**
+     * 缓存名称（cacheName）
+     */
+    String value();
+
+    /**
+     * id集合参数的下标。默认：0，第一个参数
+     */
+    int argIndex() default 0;
+
+    /**
+     * 返回值为集合时，元素中id的属性名，例如id
+     */
+    String keyProperty() default "";
+}
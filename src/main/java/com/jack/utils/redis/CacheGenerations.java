@@ -0,0 +1,187 @@
+package com.jack.utils.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.cache.CacheKeyPrefix;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存的版本号（generation）。每个缓存在redis中有一个计数器：{keyPrefix}{cacheName}，版本号作为key前缀的一部分：
+ * {cacheName}::g{generation}::{key}。
+ * <p></p>
+ * 清空缓存时只递增版本号（INCR），之后的读写都使用新的前缀，旧版本的缓存不会再被读到，等待过期或者由后台的清理任务通过SCAN + UNLINK删除，
+ * 避免{@code KEYS pattern} + DEL在key很多时阻塞redis。
+ * <p></p>
+ * 各个节点在本地缓存版本号refreshMillis毫秒，其他节点清空缓存后，当前节点最多在refreshMillis之后读到新版本；
+ * 开启了本地缓存（{@link TwoLevelCacheManager}）时，收到清空的通知后立即读取新版本。
+ */
+@Slf4j
+public class CacheGenerations implements CacheKeyPrefix {
+
+    private static final int UNLINK_BATCH_SIZE = 500;
+
+    private final StringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+    private final long refreshMillis;
+    private final int scanCount;
+
+    /**
+     * 清理旧版本缓存的线程，为null时不清理
+     */
+    private final ExecutorService sweeper;
+
+    private final Map<String, Generation> generations = new ConcurrentHashMap<>();
+
+    /**
+     * @param keyPrefix     版本号计数器的key前缀
+     * @param refreshMillis 本地缓存版本号的时间，单位：毫秒。为0时每次读写缓存都从redis读取版本号
+     * @param sweep         清空缓存后是否在后台删除旧版本的缓存
+     * @param scanCount     清理时每次SCAN的COUNT
+     */
+    public CacheGenerations(RedisConnectionFactory redisConnectionFactory, String keyPrefix, long refreshMillis,
+                            boolean sweep, int scanCount) {
+        this.redisTemplate = new StringRedisTemplate(redisConnectionFactory);
+        this.keyPrefix = keyPrefix;
+        this.refreshMillis = refreshMillis;
+        this.scanCount = scanCount;
+        if (sweep) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.sweeper = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "cache-sweeper-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            ((ThreadPoolExecutor) this.sweeper).allowCoreThreadTimeOut(true);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    @Override
+    public String compute(String cacheName) {
+        return cacheName + SEPARATOR + "g" + current(cacheName) + SEPARATOR;
+    }
+
+    /**
+     * 缓存当前的版本号，从未清空过的缓存为0
+     */
+    public long current(String cacheName) {
+        Generation generation = generations.get(cacheName);
+        long now = System.currentTimeMillis();
+        if (generation == null || now - generation.loadedAt >= refreshMillis) {
+            String value = redisTemplate.opsForValue().get(keyPrefix + cacheName);
+            generation = generations.merge(cacheName, new Generation(value == null ? 0L : Long.parseLong(value), now),
+                    CacheGenerations::newer);
+        }
+        return generation.value;
+    }
+
+    /**
+     * 递增版本号，即清空缓存
+     * @return  新的版本号
+     */
+    public long increment(String cacheName) {
+        Long value = redisTemplate.opsForValue().increment(keyPrefix + cacheName);
+        long generation = value == null ? 0L : value;
+        generations.merge(cacheName, new Generation(generation, System.currentTimeMillis()), CacheGenerations::newer);
+        if (sweeper != null && generation > 0) {
+            // 每次递增只清理上一个版本，所有节点的递增合起来覆盖全部旧版本
+            sweeper.execute(() -> sweep(cacheName, generation - 1));
+        }
+        return generation;
+    }
+
+    /**
+     * 丢弃本地缓存的版本号，下次读写时从redis读取。收到其他节点清空缓存的通知时调用
+     */
+    public void refresh(String cacheName) {
+        generations.remove(cacheName);
+    }
+
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * 通过SCAN + UNLINK删除某个版本的全部缓存，不会长时间阻塞redis
+     */
+    private void sweep(String cacheName, long generation) {
+        byte[] pattern = (escape(cacheName) + SEPARATOR + "g" + generation + SEPARATOR + "*").getBytes(StandardCharsets.UTF_8);
+        ScanOptions scanOptions = ScanOptions.scanOptions().match(pattern).count(scanCount).build();
+        try {
+            Long deleted = redisTemplate.execute((RedisCallback<Long>) connection -> {
+                long count = 0;
+                List<byte[]> batch = new ArrayList<>(UNLINK_BATCH_SIZE);
+                try (Cursor<byte[]> cursor = connection.keyCommands().scan(scanOptions)) {
+                    while (cursor.hasNext() && !Thread.currentThread().isInterrupted()) {
+                        batch.add(cursor.next());
+                        if (batch.size() >= UNLINK_BATCH_SIZE) {
+                            count += unlink(connection, batch);
+                        }
+                    }
+                }
+                return count + unlink(connection, batch);
+            });
+            log.info("已删除旧版本的缓存：cacheName = {}，generation = {}，count = {}", cacheName, generation, deleted);
+        } catch (Exception e) {
+            log.warn("删除旧版本的缓存失败，等待缓存过期：cacheName = {}，generation = {}", cacheName, generation, e);
+        }
+    }
+
+    private static long unlink(RedisConnection connection, List<byte[]> keys) {
+        if (keys.isEmpty()) {
+            return 0L;
+        }
+        Long count = connection.keyCommands().unlink(keys.toArray(new byte[0][]));
+        keys.clear();
+        return count == null ? 0L : count;
+    }
+
+    /**
+     * 转义缓存名称中的glob通配符
+     */
+    private static String escape(String cacheName) {
+        StringBuilder escaped = new StringBuilder(cacheName.length());
+        for (int i = 0; i < cacheName.length(); i++) {
+            char c = cacheName.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * 版本号只会递增，并发读取、递增时保留较大的版本号
+     */
+    private static Generation newer(Generation existing, Generation loaded) {
+        if (existing.value > loaded.value) {
+            return new Generation(existing.value, Math.max(existing.loadedAt, loaded.loadedAt));
+        }
+        return loaded;
+    }
+
+    private static final class Generation {
+        final long value;
+        final long loadedAt;
+
+        Generation(long value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
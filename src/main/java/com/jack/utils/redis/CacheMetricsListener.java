@@ -0,0 +1,29 @@
+package com.jack.utils.redis;
+
+/**
+ * {@link EnhancedRedisCache}的指标监听器，用于把缓存的读写情况发布到监控系统（参考{@link MicrometerCacheMetricsListener}）。
+ * 时间的单位都是纳秒
+ */
+public interface CacheMetricsListener {
+
+    /**
+     * 读取缓存，单个读取时hits + misses + absents = 1，批量读取时为各类key的数量
+     * @param absents   布隆过滤器判断一定不存在、没有读取redis的key的数量
+     */
+    void onGet(String cacheName, int hits, int misses, int absents, long durationNanos);
+
+    /**
+     * 写入缓存
+     * @param count 写入的key的数量
+     */
+    void onPut(String cacheName, int count, long durationNanos);
+
+    /**
+     * 写入redis的缓存值序列化之后的大小
+     */
+    void onPayload(String cacheName, int bytes);
+
+    void onEvict(String cacheName);
+
+    void onClear(String cacheName);
+}
@@ -0,0 +1,97 @@
+package com.jack.utils.redis;
+
+import lombok.Data;
+
+/**
+ * 单个缓存（cacheName）的扩展配置，由{@link EnhancedRedisCacheManager}传给{@link EnhancedRedisCache}。
+ * 过期时间、序列化方式等spring原有的配置仍然通过{@link org.springframework.data.redis.cache.RedisCacheConfiguration}指定。
+ */
+@Data
+public class CacheOptions {
+
+    /**
+     * 过期时间的随机抖动，实际过期时间在[ttl, ttl + timeToLiveJitterMillis]之间。0：不抖动
+     */
+    private long timeToLiveJitterMillis;
+
+    /**
+     * 是否在缓存未命中时跨节点合并加载，只对{@code @Cacheable(sync = true)}生效
+     */
+    private boolean singleFlight;
+
+    /**
+     * 加载锁的过期时间，应大于加载数据的耗时
+     */
+    private long lockTimeoutMillis = 3000L;
+
+    /**
+     * 等待其他节点加载的最长时间，超时后自行加载
+     */
+    private long waitTimeoutMillis = 3000L;
+
+    /**
+     * 缓存过期后继续保留旧数据的时间，其他节点加载期间直接返回旧数据。0：不保留
+     */
+    private long staleTimeToLiveMillis;
+
+    /**
+     * 提前刷新的比例：剩余的过期时间不足ttl * refreshAheadRatio时通过{@link CacheReloader}异步刷新，只对{@code @Cacheable(sync = true)}生效。
+     * 0：不提前刷新
+     */
+    private double refreshAheadRatio;
+
+    /**
+     * 空值（null）的过期时间，通常比ttl短，避免不存在的数据长时间占用缓存，数据新增后也能较快生效。0：与ttl相同
+     */
+    private long nullTimeToLiveMillis;
+
+    /**
+     * 是否使用布隆过滤器（{@link RedisBloomFilter}）拦截一定不存在的key
+     */
+    private boolean bloomFilter;
+
+    /**
+     * 布隆过滤器在redis中的key前缀，key为{bloomFilterKeyPrefix}{cacheName}
+     */
+    private String bloomFilterKeyPrefix = "jack:cache:bloom:";
+
+    /**
+     * 布隆过滤器预计的key的数量
+     */
+    private long bloomFilterExpectedInsertions = 1000000L;
+
+    /**
+     * 布隆过滤器期望的误判率
+     */
+    private double bloomFilterFalsePositiveProbability = 0.01D;
+
+    /**
+     * 是否开启热点key探测（{@link HotKeyDetector}），热点key在当前节点保存短时间的副本
+     */
+    private boolean hotKey;
+
+    /**
+     * 热点探测的采样率，(0, 1]
+     */
+    private double hotKeySampleRate = 0.1D;
+
+    /**
+     * 滑动窗口内的读取次数达到此值时视为热点
+     */
+    private long hotKeyThreshold = 1000L;
+
+    /**
+     * 热点探测的滑动窗口长度
+     */
+    private long hotKeyWindowMillis = 10000L;
+
+    /**
+     * 热点key本地副本的过期时间
+     */
+    private long hotKeyLocalTimeToLiveMillis = 1000L;
+
+    /**
+     * 每个缓存最多保存的热点key数量
+     */
+    private int hotKeyMaxKeys = 100;
+}
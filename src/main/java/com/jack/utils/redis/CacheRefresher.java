@@ -0,0 +1,68 @@
+package com.jack.utils.redis;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存的提前刷新（refresh-ahead）。缓存快要过期时，在有界的线程池中异步重新加载，期间调用方仍然读取到旧的缓存值。
+ * <p></p>
+ * 同一个key同时只有一次刷新，刷新中的key再次触发时直接忽略；线程池的队列满时同样忽略，缓存过期后由调用方同步加载。
+ */
+@Slf4j
+public class CacheRefresher {
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 正在刷新（包括在队列中等待）的key
+     */
+    private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param poolSize      刷新线程的数量
+     * @param queueCapacity 等待刷新的最大数量
+     */
+    public CacheRefresher(int poolSize, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 异步刷新
+     * @param refreshKey    用于去重的key，需要包含缓存名称
+     * @param refresh       重新加载并写入缓存
+     */
+    public void refresh(String refreshKey, Runnable refresh) {
+        if (!refreshingKeys.add(refreshKey)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh.run();
+                } catch (Exception e) {
+                    log.warn("提前刷新缓存失败：key = {}", refreshKey, e);
+                } finally {
+                    refreshingKeys.remove(refreshKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshingKeys.remove(refreshKey);
+            log.debug("提前刷新缓存的队列已满，忽略：key = {}", refreshKey);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
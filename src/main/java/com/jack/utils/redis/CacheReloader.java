@@ -0,0 +1,35 @@
+package com.jack.utils.redis;
+
+/**
+ * 提前刷新（refresh-ahead）时重新加载缓存值，注册为spring bean后生效，没有对应CacheReloader的缓存不提前刷新。例如：
+ * <blockquote><pre>
+ *     &#64;Component
+ *     public class BookCacheReloader implements CacheReloader {
+ *         &#64;Override
+ *         public String getCacheName() {
+ *             return "BOOK_CACHE";
+ *         }
+ *
+ *         &#64;Override
+ *         public Object reload(Object key) {
+ *             return bookMapper.selectById((Long) key);
+ *         }
+ *     }
+ * </pre></blockquote>
+ * 提前刷新在后台线程中执行，不在调用方的事务中，也读取不到调用方线程的ThreadLocal（登录用户、租户、数据源路由等），
+ * 所以不会复用{@code @Cacheable}方法本身，需要由实现类根据key显式地加载。
+ */
+public interface CacheReloader {
+
+    /**
+     * 刷新的缓存名称（cacheName）
+     */
+    String getCacheName();
+
+    /**
+     * 重新加载缓存值，在刷新线程中调用
+     * @param key   缓存的key，与{@code @Cacheable}生成的key一致
+     * @return      新的缓存值
+     */
+    Object reload(Object key) throws Exception;
+}
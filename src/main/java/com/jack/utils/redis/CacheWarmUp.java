@@ -0,0 +1,125 @@
+package com.jack.utils.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 应用启动时的缓存预热：在有界线程池中并行执行所有的{@link CacheWarmUpProvider}，加载的数据分批通过pipeline写入redis，
+ * 开启了本地缓存时可以同时写入本地缓存。
+ * <p></p>
+ * 预热在{@link ApplicationRunner}中执行，完成或者超时之后应用才进入就绪状态（ReadinessState.ACCEPTING_TRAFFIC），
+ * 超时后未完成的预热继续在后台执行。单个数据来源加载失败只记录日志，不影响应用启动。
+ */
+@Slf4j
+public class CacheWarmUp implements ApplicationRunner {
+
+    private final ObjectProvider<CacheManager> cacheManagerProvider;
+    private final ObjectProvider<CacheWarmUpProvider> warmUpProviders;
+    private final int poolSize;
+    private final long timeoutSeconds;
+    private final int batchSize;
+    private final boolean populateLocal;
+
+    /**
+     * @param poolSize          并行预热的线程数
+     * @param timeoutSeconds    等待预热完成的最长时间，单位：秒
+     * @param batchSize         每次pipeline写入的数量
+     * @param populateLocal     是否同时写入本地缓存，只对{@link TwoLevelCache}生效
+     */
+    public CacheWarmUp(ObjectProvider<CacheManager> cacheManagerProvider, ObjectProvider<CacheWarmUpProvider> warmUpProviders,
+                       int poolSize, long timeoutSeconds, int batchSize, boolean populateLocal) {
+        this.cacheManagerProvider = cacheManagerProvider;
+        this.warmUpProviders = warmUpProviders;
+        this.poolSize = poolSize;
+        this.timeoutSeconds = timeoutSeconds;
+        this.batchSize = batchSize;
+        this.populateLocal = populateLocal;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<CacheWarmUpProvider> providers = warmUpProviders.orderedStream().collect(Collectors.toList());
+        CacheManager cacheManager = cacheManagerProvider.getIfAvailable();
+        if (providers.isEmpty() || cacheManager == null) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(poolSize, providers.size()), runnable -> {
+            Thread thread = new Thread(runnable, "cache-warm-up-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<?>[] futures = providers.stream()
+                .map(provider -> CompletableFuture.runAsync(() -> warmUp(cacheManager, provider), executor))
+                .toArray(CompletableFuture[]::new);
+        // 不再接收新任务，已经提交的预热执行完之后线程退出
+        executor.shutdown();
+
+        try {
+            CompletableFuture.allOf(futures).get(timeoutSeconds, TimeUnit.SECONDS);
+            log.info("缓存预热完成：数量 = {}，耗时 = {}ms", providers.size(), System.currentTimeMillis() - start);
+        } catch (TimeoutException e) {
+            log.warn("缓存预热超时（{}秒），未完成的预热继续在后台执行", timeoutSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // warmUp内部已经处理了异常
+            log.error("缓存预热失败", e);
+        }
+    }
+
+    private void warmUp(CacheManager cacheManager, CacheWarmUpProvider provider) {
+        String cacheName = provider.getCacheName();
+        long start = System.currentTimeMillis();
+        try {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (cache == null) {
+                log.warn("缓存预热失败，找不到缓存：{}", cacheName);
+                return;
+            }
+            if (cache instanceof TransactionAwareCacheDecorator) {
+                cache = ((TransactionAwareCacheDecorator) cache).getTargetCache();
+            }
+
+            Map<?, ?> values = provider.load();
+            if (values == null || values.isEmpty()) {
+                return;
+            }
+            Map<Object, Object> batch = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : values.entrySet()) {
+                batch.put(entry.getKey(), entry.getValue());
+                if (batch.size() >= batchSize) {
+                    write(cache, batch);
+                    batch = new LinkedHashMap<>();
+                }
+            }
+            write(cache, batch);
+            log.info("缓存预热完成：cacheName = {}，count = {}，耗时 = {}ms", cacheName, values.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("缓存预热失败：cacheName = {}", cacheName, e);
+        }
+    }
+
+    private void write(Cache cache, Map<Object, Object> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (cache instanceof EnhancedRedisCache) {
+            ((EnhancedRedisCache) cache).warmUp(batch, populateLocal);
+        } else {
+            batch.forEach(cache::put);
+        }
+    }
+}
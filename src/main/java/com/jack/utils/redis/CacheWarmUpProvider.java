@@ -0,0 +1,34 @@
+package com.jack.utils.redis;
+
+import java.util.Map;
+
+/**
+ * 缓存预热的数据来源，注册为spring bean后在应用启动时由{@link CacheWarmUp}并行加载并写入缓存。例如：
+ * <blockquote><pre>
+ *     &#64;Component
+ *     public class HotBookWarmUpProvider implements CacheWarmUpProvider {
+ *         &#64;Override
+ *         public String getCacheName() {
+ *             return "BOOK_CACHE";
+ *         }
+ *
+ *         &#64;Override
+ *         public Map&lt;?, ?&gt; load() {
+ *             return bookMapper.selectHotBooks().stream().collect(Collectors.toMap(Book::getId, Function.identity()));
+ *         }
+ *     }
+ * </pre></blockquote>
+ */
+public interface CacheWarmUpProvider {
+
+    /**
+     * 预热的缓存名称（cacheName）
+     */
+    String getCacheName();
+
+    /**
+     * 加载需要预热的数据
+     * @return  缓存的key -> 缓存值，key需要与{@code @Cacheable}生成的key一致
+     */
+    Map<?, ?> load();
+}
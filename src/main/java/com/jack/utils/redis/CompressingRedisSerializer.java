@@ -0,0 +1,97 @@
+package com.jack.utils.redis;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 压缩缓存值的序列化器，包装{@link CacheValueSerializers}中的序列化方式。
+ * <p></p>
+ * 序列化之后的大小达到阈值时，使用Deflate压缩，并在开头增加一个头部字节{@link #COMPRESSED}；小于阈值或者压缩后没有变小时原样保存。
+ * json、smile、jdk序列化的结果都不会以这个字节开头，所以开启、关闭压缩或者调整阈值前后保存的缓存都可以正常读取。
+ */
+public class CompressingRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 压缩后的缓存值的头部字节
+     */
+    static final byte COMPRESSED = 0x00;
+
+    private final RedisSerializer<Object> delegate;
+    private final int threshold;
+
+    /**
+     * @param delegate  实际的序列化方式
+     * @param threshold 压缩阈值，序列化之后的字节数达到此值时压缩
+     */
+    public CompressingRedisSerializer(RedisSerializer<Object> delegate, int threshold) {
+        Assert.notNull(delegate, "delegate can not be null");
+        Assert.isTrue(threshold > 0, "threshold must be greater than 0");
+        this.delegate = delegate;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] bytes = delegate.serialize(value);
+        if (bytes == null || bytes.length < threshold) {
+            return bytes;
+        }
+
+        byte[] compressed = deflate(bytes);
+        return compressed.length < bytes.length ? compressed : bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0 || bytes[0] != COMPRESSED) {
+            return delegate.deserialize(bytes);
+        }
+        return delegate.deserialize(inflate(bytes));
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        // 缓存的读写对延迟敏感，使用最快的压缩级别
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 16);
+            out.write(COMPRESSED);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 1, bytes.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new SerializationException("缓存值的压缩数据不完整");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new SerializationException("无法解压缓存值", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
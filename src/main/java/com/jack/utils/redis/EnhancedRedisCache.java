@@ -0,0 +1,600 @@
+package com.jack.utils.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在{@link RedisCache}的基础上增加：
+ * <ul>
+ *     <li>过期时间的随机抖动：同时写入的缓存不会同时过期，避免大量请求同时落到数据库</li>
+ *     <li>跨节点合并加载（single-flight）：{@code @Cacheable(sync = true)}的缓存未命中时，只有拿到redis锁的节点执行加载，
+ *     其他节点等待加载完成；开启了旧数据保留时，等待期间直接返回过期的旧数据</li>
+ *     <li>提前刷新（refresh-ahead）：{@code @Cacheable(sync = true)}的缓存读取时，如果剩余的过期时间不足ttl的一定比例，
+ *     通过{@link CacheRefresher}调用缓存对应的{@link CacheReloader}异步重新加载，本次仍然返回当前的缓存值</li>
+ *     <li>空值的过期时间：方法返回null时使用较短的过期时间（nullTimeToLive）</li>
+ *     <li>布隆过滤器：开启后不在{@link RedisBloomFilter}中的key视为一定不存在，直接返回null，不再查询redis和数据库。
+ *     已经存在的key需要通过{@link #addKnownKey}、{@link #addKnownKeys}写入，写入缓存的非空值也会自动加入</li>
+ *     <li>热点key：开启后读取次数超过阈值的key在当前节点保存短时间的副本（参考{@link HotKeyDetector}），减轻单个redis分片的压力</li>
+ *     <li>指标：读取的命中/未命中次数和耗时、写入的次数和耗时、缓存值的大小等，通过{@link CacheMetricsListener}发布</li>
+ *     <li>按版本号清空：{@code @CacheEvict(allEntries = true)}只递增缓存的版本号（参考{@link CacheGenerations}），时间复杂度O(1)</li>
+ * </ul>
+ * 开启旧数据保留或者提前刷新时，缓存值的开头增加头部字节{@link #ENVELOPE}和逻辑过期时间，redis中的实际过期时间延长staleTimeToLive，
+ * 逻辑过期之后普通的读取视为未命中。没有头部的缓存值（例如开启前保存的）视为未过期，也不会提前刷新。
+ */
+@Slf4j
+public class EnhancedRedisCache extends RedisCache {
+
+    /**
+     * 带有逻辑过期时间的缓存值的头部字节，与序列化方式、压缩的头部都不冲突
+     */
+    static final byte ENVELOPE = 0x01;
+
+    private static final int ENVELOPE_LENGTH = 1 + Long.BYTES;
+
+    private static final String LOCK_SUFFIX = ":lock";
+
+    private static final long WAIT_INTERVAL_MILLIS = 50L;
+
+    /**
+     * 布隆过滤器判断一定不存在的key，指标中单独统计，不算作命中
+     */
+    private static final Entry ABSENT = new Entry(NullValue.INSTANCE, Long.MAX_VALUE);
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final RedisCacheWriter cacheWriter;
+    private final CacheOptions options;
+    private final StringRedisTemplate redisTemplate;
+    private final CacheRefresher cacheRefresher;
+    private final EnhancedRedisCacheManager cacheManager;
+    private final CacheGenerations cacheGenerations;
+
+    /**
+     * 已知存在的key，为null时不拦截
+     */
+    private final RedisBloomFilter bloomFilter;
+
+    /**
+     * 热点key探测，为null时不探测
+     */
+    private final HotKeyDetector hotKeyDetector;
+
+    /**
+     * 指标监听器，为null时不记录指标
+     */
+    private final CacheMetricsListener metricsListener;
+
+    protected EnhancedRedisCache(String name, RedisCacheWriter cacheWriter, RedisCacheConfiguration cacheConfig,
+                                 CacheOptions options, EnhancedRedisCacheManager cacheManager) {
+        super(name, cacheWriter, cacheConfig);
+        this.cacheWriter = cacheWriter;
+        this.options = options;
+        this.redisTemplate = cacheManager.getRedisTemplate();
+        this.cacheRefresher = cacheManager.getCacheRefresher();
+        this.cacheManager = cacheManager;
+        this.cacheGenerations = cacheManager.getCacheGenerations();
+        this.bloomFilter = options.isBloomFilter()
+                ? new RedisBloomFilter(redisTemplate, options.getBloomFilterKeyPrefix() + name,
+                        options.getBloomFilterExpectedInsertions(), options.getBloomFilterFalsePositiveProbability())
+                : null;
+        this.metricsListener = cacheManager.getCacheMetricsListener();
+        this.hotKeyDetector = options.isHotKey()
+                ? new HotKeyDetector(name, options.getHotKeySampleRate(), options.getHotKeyThreshold(), options.getHotKeyWindowMillis(),
+                        options.getHotKeyLocalTimeToLiveMillis(), options.getHotKeyMaxKeys())
+                : null;
+    }
+
+    protected CacheOptions getOptions() {
+        return options;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        long start = System.nanoTime();
+        Entry entry = lookupKnownEntry(key);
+        recordGet(entry, start);
+        return entry == null || entry == ABSENT && !isAllowNullValues() ? null : entry.value;
+    }
+
+    /**
+     * 布隆过滤器判断一定不存在的key直接返回{@link #ABSENT}，热点key优先使用本地副本，否则读取未过期的缓存值
+     */
+    private Entry lookupKnownEntry(Object key) {
+        if (isDefinitelyAbsent(key)) {
+            return ABSENT;
+        }
+        if (hotKeyDetector == null) {
+            return lookupFreshEntry(key);
+        }
+
+        String cacheKey = createCacheKey(key);
+        Entry local = (Entry) hotKeyDetector.get(cacheKey);
+        if (local != null && !local.isStale()) {
+            return local;
+        }
+        Entry entry = lookupFreshEntry(key);
+        if (entry != null) {
+            hotKeyDetector.offer(cacheKey, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * 当前的热点key，没有开启热点探测时返回空集合
+     */
+    public List<HotKeyDetector.HotKeyStats> getHotKeys() {
+        return hotKeyDetector == null ? Collections.emptyList() : hotKeyDetector.getHotKeys();
+    }
+
+    /**
+     * 删除热点key的本地副本
+     * @param cacheKey  redis中的key，为null时删除全部
+     */
+    protected void invalidateHotKey(String cacheKey) {
+        if (hotKeyDetector == null) {
+            return;
+        }
+        if (cacheKey == null) {
+            hotKeyDetector.invalidateAll();
+        } else {
+            hotKeyDetector.invalidate(cacheKey);
+        }
+    }
+
+    private boolean isDefinitelyAbsent(Object key) {
+        return bloomFilter != null && !bloomFilter.mightContain(convertKey(key));
+    }
+
+    /**
+     * 记录已经存在的key（例如新增数据之后），开启了布隆过滤器时才有效
+     */
+    public void addKnownKey(Object key) {
+        if (bloomFilter != null) {
+            bloomFilter.put(convertKey(key));
+        }
+    }
+
+    /**
+     * 批量记录已经存在的key（例如启动时写入数据库中所有的id），开启了布隆过滤器时才有效
+     */
+    public void addKnownKeys(Collection<?> keys) {
+        if (bloomFilter != null) {
+            List<String> convertedKeys = new ArrayList<>(keys.size());
+            for (Object key : keys) {
+                convertedKeys.add(convertKey(key));
+            }
+            bloomFilter.putAll(convertedKeys);
+        }
+    }
+
+    /**
+     * 读取未过期的缓存值
+     */
+    protected Entry lookupFreshEntry(Object key) {
+        Entry entry = lookupEntry(key);
+        return entry == null || entry.isStale() ? null : entry;
+    }
+
+    /**
+     * 读取缓存值，包括逻辑过期的旧数据
+     */
+    protected Entry lookupEntry(Object key) {
+        byte[] bytes = cacheWriter.get(getName(), serializeCacheKey(createCacheKey(key)));
+        return bytes == null ? null : decode(bytes);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        long start = System.nanoTime();
+        Object cacheValue = checkedStoreValue(key, value);
+        long ttlMillis = nextTtlMillis(cacheValue);
+        addKnownKeyIfPresent(key, cacheValue);
+        String cacheKey = createCacheKey(key);
+        cacheWriter.put(getName(), serializeCacheKey(cacheKey), encode(cacheValue, ttlMillis), storeTtl(ttlMillis));
+        invalidateHotKey(cacheKey);
+        recordPut(1, start);
+    }
+
+    @Override
+    public void evict(Object key) {
+        super.evict(key);
+        invalidateHotKey(createCacheKey(key));
+        if (metricsListener != null) {
+            metricsListener.onEvict(getName());
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        long start = System.nanoTime();
+        Object cacheValue = checkedStoreValue(key, value);
+        long ttlMillis = nextTtlMillis(cacheValue);
+        addKnownKeyIfPresent(key, cacheValue);
+        String cacheKey = createCacheKey(key);
+        byte[] existing = cacheWriter.putIfAbsent(getName(), serializeCacheKey(cacheKey),
+                encode(cacheValue, ttlMillis), storeTtl(ttlMillis));
+        if (existing == null) {
+            invalidateHotKey(cacheKey);
+        }
+        recordPut(1, start);
+        return existing == null ? null : toValueWrapper(decode(existing).value);
+    }
+
+    /**
+     * 批量读取，所有key通过一次MGET读取。布隆过滤器判断一定不存在的key不读取redis，允许缓存null时返回空值
+     * @return  命中的key及其缓存值，不包括未命中和逻辑过期的key
+     */
+    public Map<Object, ValueWrapper> getAll(Collection<?> keys) {
+        long start = System.nanoTime();
+        if (bloomFilter == null) {
+            Map<Object, ValueWrapper> result = lookupAll(keys);
+            recordGet(result.size(), keys.size() - result.size(), 0, start);
+            return result;
+        }
+
+        // 布隆过滤器判断一定不存在的key不读取redis，允许缓存null时返回空值
+        Map<Object, ValueWrapper> result = new LinkedHashMap<>();
+        List<Object> knownKeys = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            if (!isDefinitelyAbsent(key)) {
+                knownKeys.add(key);
+            } else if (isAllowNullValues()) {
+                result.put(key, toValueWrapper(NullValue.INSTANCE));
+            }
+        }
+        Map<Object, ValueWrapper> found = lookupAll(knownKeys);
+        result.putAll(found);
+        recordGet(found.size(), knownKeys.size() - found.size(), keys.size() - knownKeys.size(), start);
+        return result;
+    }
+
+    /**
+     * 批量读取未过期的缓存值
+     */
+    protected Map<Object, ValueWrapper> lookupAll(Collection<?> keys) {
+        Map<Object, ValueWrapper> result = new LinkedHashMap<>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+
+        List<Object> keyList = new ArrayList<>(keys);
+        byte[][] cacheKeys = new byte[keyList.size()][];
+        for (int i = 0; i < keyList.size(); i++) {
+            cacheKeys[i] = serializeCacheKey(createCacheKey(keyList.get(i)));
+        }
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(cacheKeys));
+        if (values == null) {
+            return result;
+        }
+        for (int i = 0; i < keyList.size(); i++) {
+            byte[] bytes = values.get(i);
+            if (bytes == null) {
+                continue;
+            }
+            Entry entry = decode(bytes);
+            if (!entry.isStale()) {
+                result.put(keyList.get(i), toValueWrapper(entry.value));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量写入，所有key通过一次pipeline写入，每个key的过期时间单独计算（包括随机抖动）
+     */
+    public void putAll(Map<?, ?> values) {
+        writeAll(values);
+    }
+
+    /**
+     * 缓存预热，批量写入redis
+     * @param populateLocal 是否同时写入本地缓存，只对{@link TwoLevelCache}生效
+     */
+    public void warmUp(Map<?, ?> values, boolean populateLocal) {
+        writeAll(values);
+    }
+
+    /**
+     * 批量写入redis
+     */
+    protected void writeAll(Map<?, ?> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        // 不同的key可能对应同一个redis中的key（例如1和1L），缓存值和过期时间放在一起，以最后一个为准
+        Map<String, PendingWrite> cacheValues = new LinkedHashMap<>();
+        List<Object> presentKeys = new ArrayList<>(values.size());
+        values.forEach((key, value) -> {
+            Object cacheValue = checkedStoreValue(key, value);
+            long ttlMillis = nextTtlMillis(cacheValue);
+            cacheValues.put(createCacheKey(key), new PendingWrite(encode(cacheValue, ttlMillis), storeTtl(ttlMillis)));
+            if (!(cacheValue instanceof NullValue)) {
+                presentKeys.add(key);
+            }
+        });
+        addKnownKeys(presentKeys);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            cacheValues.forEach((cacheKey, write) -> {
+                byte[] serializedKey = serializeCacheKey(cacheKey);
+                if (write.ttl.isZero() || write.ttl.isNegative()) {
+                    connection.stringCommands().set(serializedKey, write.value);
+                } else {
+                    connection.stringCommands().set(serializedKey, write.value, Expiration.from(write.ttl), RedisStringCommands.SetOption.upsert());
+                }
+            });
+            return null;
+        });
+        cacheValues.keySet().forEach(this::invalidateHotKey);
+        recordPut(values.size(), start);
+    }
+
+    /**
+     * 开启了版本号时只递增版本号，旧版本的缓存等待过期或者后台清理，否则使用原有的KEYS + DEL
+     */
+    @Override
+    public void clear() {
+        if (cacheGenerations == null) {
+            super.clear();
+        } else {
+            cacheGenerations.increment(getName());
+        }
+        invalidateHotKey(null);
+        if (metricsListener != null) {
+            metricsListener.onClear(getName());
+        }
+    }
+
+    private void recordGet(Entry entry, long start) {
+        if (entry == ABSENT) {
+            recordGet(0, 0, 1, start);
+        } else {
+            recordGet(entry == null ? 0 : 1, entry == null ? 1 : 0, 0, start);
+        }
+    }
+
+    private void recordGet(int hits, int misses, int absents, long start) {
+        if (metricsListener != null) {
+            metricsListener.onGet(getName(), hits, misses, absents, System.nanoTime() - start);
+        }
+    }
+
+    private void recordPut(int count, long start) {
+        if (metricsListener != null) {
+            metricsListener.onPut(getName(), count, System.nanoTime() - start);
+        }
+    }
+
+    private void addKnownKeyIfPresent(Object key, Object cacheValue) {
+        if (!(cacheValue instanceof NullValue)) {
+            addKnownKey(key);
+        }
+    }
+
+    private Object checkedStoreValue(Object key, Object value) {
+        Object cacheValue = preProcessCacheValue(value);
+        if (!isAllowNullValues() && cacheValue == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Cache '%s' does not allow 'null' values. Avoid storing null via '@Cacheable(unless=\"#result == null\")' or configure RedisCache to allow 'null' via RedisCacheConfiguration.",
+                    getName()));
+        }
+        return cacheValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        long start = System.nanoTime();
+        Entry entry = lookupKnownEntry(key);
+        recordGet(entry, start);
+        if (entry == ABSENT && !isAllowNullValues()) {
+            entry = null;
+        }
+        if (entry != null) {
+            refreshAheadIfNecessary(key, entry);
+            return (T) fromStoreValue(entry.value);
+        }
+        if (!options.isSingleFlight()) {
+            return (T) fromStoreValue(loadSynchronized(key, valueLoader));
+        }
+        return (T) fromStoreValue(loadSingleFlight(key, valueLoader));
+    }
+
+    /**
+     * 与{@link RedisCache#get(Object, Callable)}相同，同一个节点上同时只有一个线程加载，拿到锁之后再检查一次缓存
+     * @return  缓存值（store value）
+     */
+    private synchronized Object loadSynchronized(Object key, Callable<?> valueLoader) {
+        Entry entry = lookupFreshEntry(key);
+        return entry != null ? entry.value : load(key, valueLoader);
+    }
+
+    /**
+     * 只有拿到锁的节点执行加载，其他节点等待加载完成或者返回旧数据
+     * @return  缓存值（store value）
+     */
+    private Object loadSingleFlight(Object key, Callable<?> valueLoader) {
+        String lockKey = createCacheKey(key) + LOCK_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + options.getWaitTimeoutMillis();
+        for (;;) {
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey, token, options.getLockTimeoutMillis(), TimeUnit.MILLISECONDS);
+            if (Boolean.TRUE.equals(locked)) {
+                try {
+                    // 拿到锁之前其他节点可能已经加载完成
+                    Entry entry = lookupEntry(key);
+                    if (entry != null && !entry.isStale()) {
+                        return entry.value;
+                    }
+                    return load(key, valueLoader);
+                } finally {
+                    redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+                }
+            }
+
+            Entry entry = lookupEntry(key);
+            if (entry != null) {
+                // 其他节点已经加载完成，或者在加载期间返回旧数据
+                return entry.value;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                log.warn("等待其他节点加载缓存超时，自行加载：cacheName = {}，key = {}", getName(), key);
+                return load(key, valueLoader);
+            }
+            try {
+                Thread.sleep(WAIT_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+        }
+    }
+
+    /**
+     * 剩余的过期时间不足ttl * refreshAheadRatio时异步刷新。开启了跨节点合并加载时，只有拿到锁的节点刷新
+     * <p></p>
+     * 刷新线程中没有调用方的事务和ThreadLocal，所以不复用调用方传入的valueLoader，只通过缓存对应的{@link CacheReloader}加载，没有时不刷新
+     */
+    private void refreshAheadIfNecessary(Object key, Entry entry) {
+        if (cacheRefresher == null || options.getRefreshAheadRatio() <= 0 || entry.expireAt == Long.MAX_VALUE
+                || entry.value instanceof NullValue) {
+            return;
+        }
+        long ttlMillis = getCacheConfiguration().getTtl().toMillis();
+        if (entry.expireAt - System.currentTimeMillis() > ttlMillis * options.getRefreshAheadRatio()) {
+            return;
+        }
+        CacheReloader reloader = cacheManager.getCacheReloader(getName());
+        if (reloader == null) {
+            return;
+        }
+        Callable<Object> valueLoader = () -> reloader.reload(key);
+
+        String cacheKey = createCacheKey(key);
+        cacheRefresher.refresh(cacheKey, () -> {
+            if (!options.isSingleFlight()) {
+                load(key, valueLoader);
+                return;
+            }
+
+            String lockKey = cacheKey + LOCK_SUFFIX;
+            String token = UUID.randomUUID().toString();
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey, token, options.getLockTimeoutMillis(), TimeUnit.MILLISECONDS);
+            if (!Boolean.TRUE.equals(locked)) {
+                // 其他节点正在加载
+                return;
+            }
+            try {
+                load(key, valueLoader);
+            } finally {
+                redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+            }
+        });
+    }
+
+    private Object load(Object key, Callable<?> valueLoader) {
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return toStoreValue(value);
+    }
+
+    /**
+     * 本次写入的逻辑过期时间：ttl + 随机抖动，空值使用nullTimeToLive（没有指定时与ttl相同）
+     * @return  0：永不过期
+     */
+    private long nextTtlMillis(Object cacheValue) {
+        if (cacheValue instanceof NullValue && options.getNullTimeToLiveMillis() > 0) {
+            return options.getNullTimeToLiveMillis();
+        }
+        Duration ttl = getCacheConfiguration().getTtl();
+        if (ttl.isZero() || ttl.isNegative()) {
+            return 0L;
+        }
+        long jitter = options.getTimeToLiveJitterMillis() > 0
+                ? ThreadLocalRandom.current().nextLong(options.getTimeToLiveJitterMillis() + 1) : 0L;
+        return ttl.toMillis() + jitter;
+    }
+
+    /**
+     * redis中的实际过期时间：逻辑过期时间 + 旧数据保留时间
+     */
+    private Duration storeTtl(long ttlMillis) {
+        return ttlMillis == 0L ? Duration.ZERO : Duration.ofMillis(ttlMillis + options.getStaleTimeToLiveMillis());
+    }
+
+    private byte[] encode(Object cacheValue, long ttlMillis) {
+        byte[] bytes = serializeCacheValue(cacheValue);
+        if (metricsListener != null) {
+            metricsListener.onPayload(getName(), bytes.length);
+        }
+        if ((options.getStaleTimeToLiveMillis() <= 0 && options.getRefreshAheadRatio() <= 0) || ttlMillis == 0L) {
+            return bytes;
+        }
+
+        long expireAt = System.currentTimeMillis() + ttlMillis;
+        return ByteBuffer.allocate(ENVELOPE_LENGTH + bytes.length).put(ENVELOPE).putLong(expireAt).put(bytes).array();
+    }
+
+    private Entry decode(byte[] bytes) {
+        if (bytes.length < ENVELOPE_LENGTH || bytes[0] != ENVELOPE) {
+            return new Entry(deserializeCacheValue(bytes), Long.MAX_VALUE);
+        }
+        long expireAt = ByteBuffer.wrap(bytes, 1, Long.BYTES).getLong();
+        return new Entry(deserializeCacheValue(Arrays.copyOfRange(bytes, ENVELOPE_LENGTH, bytes.length)), expireAt);
+    }
+
+    /**
+     * 批量写入时，一个key要写入redis的缓存值及其过期时间
+     */
+    private static final class PendingWrite {
+        final byte[] value;
+        final Duration ttl;
+
+        PendingWrite(byte[] value, Duration ttl) {
+            this.value = value;
+            this.ttl = ttl;
+        }
+    }
+
+    /**
+     * 缓存值（store value）及其逻辑过期时间
+     */
+    protected static final class Entry {
+        final Object value;
+        final long expireAt;
+
+        Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        boolean isStale() {
+            return System.currentTimeMillis() >= expireAt;
+        }
+    }
+}
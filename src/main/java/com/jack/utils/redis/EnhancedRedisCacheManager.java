@@ -0,0 +1,186 @@
+package com.jack.utils.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 创建{@link EnhancedRedisCache}的缓存管理器。每个缓存的扩展配置通过{@link CacheOptions}指定，没有单独指定的使用默认配置。
+ */
+@Slf4j
+public class EnhancedRedisCacheManager extends RedisCacheManager implements DisposableBean {
+
+    private final RedisCacheWriter cacheWriter;
+    private final RedisCacheConfiguration defaultCacheConfig;
+    private final CacheOptions defaultCacheOptions;
+    private final Map<String, CacheOptions> cacheOptions;
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 缓存的提前刷新，为null时不提前刷新
+     */
+    private CacheRefresher cacheRefresher;
+
+    /**
+     * 提前刷新时重新加载缓存值，第一次刷新时才获取，避免创建缓存管理器时提前初始化业务bean，为null时不提前刷新
+     */
+    private ObjectProvider<CacheReloader> cacheReloaderProvider;
+
+    /**
+     * key = cacheName
+     */
+    private volatile Map<String, CacheReloader> cacheReloaders;
+
+    /**
+     * 缓存的版本号，为null时清空缓存使用原有的KEYS + DEL
+     */
+    private CacheGenerations cacheGenerations;
+
+    /**
+     * 缓存的指标监听器，为null时不记录指标
+     */
+    private CacheMetricsListener cacheMetricsListener;
+
+    /**
+     * @param initialCacheConfigurations    每个缓存的spring原有的配置（过期时间、序列化方式等）
+     * @param defaultCacheOptions           默认的扩展配置
+     * @param cacheOptions                  每个缓存单独指定的扩展配置
+     */
+    public EnhancedRedisCacheManager(RedisConnectionFactory redisConnectionFactory, RedisCacheWriter cacheWriter,
+                                     RedisCacheConfiguration defaultCacheConfig,
+                                     Map<String, RedisCacheConfiguration> initialCacheConfigurations,
+                                     CacheOptions defaultCacheOptions, Map<String, CacheOptions> cacheOptions) {
+        super(cacheWriter, defaultCacheConfig, initialCacheConfigurations);
+        this.cacheWriter = cacheWriter;
+        this.defaultCacheConfig = defaultCacheConfig;
+        this.defaultCacheOptions = defaultCacheOptions;
+        this.cacheOptions = cacheOptions;
+        this.redisTemplate = new StringRedisTemplate(redisConnectionFactory);
+    }
+
+    @Override
+    protected RedisCache createRedisCache(String name, RedisCacheConfiguration cacheConfig) {
+        return new EnhancedRedisCache(name, cacheWriter, getCacheConfig(cacheConfig), getCacheOptions(name), this);
+    }
+
+    /**
+     * 需要在创建缓存之前（afterPropertiesSet之前）设置
+     */
+    public void setCacheRefresher(CacheRefresher cacheRefresher) {
+        this.cacheRefresher = cacheRefresher;
+    }
+
+    /**
+     * 提前刷新时使用的{@link CacheReloader}，第一次刷新时才从容器中获取
+     */
+    public void setCacheReloaders(ObjectProvider<CacheReloader> cacheReloaderProvider) {
+        this.cacheReloaderProvider = cacheReloaderProvider;
+    }
+
+    /**
+     * 需要在创建缓存之前（afterPropertiesSet之前）设置，并且与缓存配置的key前缀（{@link RedisCacheConfiguration#computePrefixWith}）使用同一个对象
+     */
+    public void setCacheGenerations(CacheGenerations cacheGenerations) {
+        this.cacheGenerations = cacheGenerations;
+    }
+
+    /**
+     * 需要在创建缓存之前（afterPropertiesSet之前）设置
+     */
+    public void setCacheMetricsListener(CacheMetricsListener cacheMetricsListener) {
+        this.cacheMetricsListener = cacheMetricsListener;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (cacheRefresher != null) {
+            cacheRefresher.shutdown();
+        }
+        if (cacheGenerations != null) {
+            cacheGenerations.shutdown();
+        }
+    }
+
+    /**
+     * 所有缓存当前的热点key，用于排查问题
+     * @return  key = cacheName，只包括存在热点key的缓存
+     */
+    public Map<String, List<HotKeyDetector.HotKeyStats>> getHotKeys() {
+        Map<String, List<HotKeyDetector.HotKeyStats>> hotKeys = new LinkedHashMap<>();
+        for (String cacheName : getCacheNames()) {
+            Cache cache = lookupCache(cacheName);
+            if (cache instanceof TransactionAwareCacheDecorator) {
+                cache = ((TransactionAwareCacheDecorator) cache).getTargetCache();
+            }
+            if (cache instanceof EnhancedRedisCache) {
+                List<HotKeyDetector.HotKeyStats> cacheHotKeys = ((EnhancedRedisCache) cache).getHotKeys();
+                if (!cacheHotKeys.isEmpty()) {
+                    hotKeys.put(cacheName, cacheHotKeys);
+                }
+            }
+        }
+        return hotKeys;
+    }
+
+    protected RedisCacheWriter getCacheWriter() {
+        return cacheWriter;
+    }
+
+    protected RedisCacheConfiguration getCacheConfig(RedisCacheConfiguration cacheConfig) {
+        return cacheConfig != null ? cacheConfig : defaultCacheConfig;
+    }
+
+    protected CacheOptions getCacheOptions(String name) {
+        return cacheOptions.getOrDefault(name, defaultCacheOptions);
+    }
+
+    protected StringRedisTemplate getRedisTemplate() {
+        return redisTemplate;
+    }
+
+    protected CacheRefresher getCacheRefresher() {
+        return cacheRefresher;
+    }
+
+    /**
+     * @return  缓存对应的{@link CacheReloader}，没有时返回null
+     */
+    protected CacheReloader getCacheReloader(String cacheName) {
+        if (cacheReloaders == null) {
+            Map<String, CacheReloader> reloaders = new HashMap<>();
+            if (cacheReloaderProvider != null) {
+                cacheReloaderProvider.orderedStream().forEach(reloader -> {
+                    CacheReloader previous = reloaders.putIfAbsent(reloader.getCacheName(), reloader);
+                    if (previous != null) {
+                        // 在读取缓存的线程中调用，不抛出异常，避免影响读取
+                        log.error("缓存{}存在多个CacheReloader，只使用{}，忽略{}", reloader.getCacheName(),
+                                previous.getClass().getName(), reloader.getClass().getName());
+                    }
+                });
+            }
+            cacheReloaders = reloaders;
+        }
+        return cacheReloaders.get(cacheName);
+    }
+
+    protected CacheGenerations getCacheGenerations() {
+        return cacheGenerations;
+    }
+
+    protected CacheMetricsListener getCacheMetricsListener() {
+        return cacheMetricsListener;
+    }
+}
@@ -0,0 +1,172 @@
+package com.jack.utils.redis;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个缓存的热点key探测：按采样率抽取读取，通过滑动窗口的count-min sketch（{@link SlidingCountMinSketch}）估计每个key在窗口内的读取次数，
+ * 超过阈值的key视为热点，在当前节点保存一份短时间的副本，之后的读取直接使用副本，不再访问redis。
+ * <p></p>
+ * 副本过期后重新从redis读取；读取次数降到阈值以下时不再是热点。当前节点写入、删除缓存时删除副本，
+ * 其他节点写入时副本最多在localTimeToLiveMillis之后更新，所以副本的过期时间应该很短。
+ */
+@Slf4j
+public class HotKeyDetector {
+
+    private static final int SKETCH_WIDTH = 2048;
+    private static final int SLOT_COUNT = 5;
+
+    private final String cacheName;
+    private final double sampleRate;
+    private final long threshold;
+    private final long localTimeToLiveMillis;
+    private final int maxHotKeys;
+    private final SlidingCountMinSketch sketch;
+
+    private final ConcurrentHashMap<String, HotKey> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * @param sampleRate            采样率，(0, 1]
+     * @param threshold             窗口内的读取次数（换算采样率之后）达到此值时视为热点
+     * @param windowMillis          滑动窗口的长度
+     * @param localTimeToLiveMillis 本地副本的过期时间
+     * @param maxHotKeys            最多保存的热点数量
+     */
+    public HotKeyDetector(String cacheName, double sampleRate, long threshold, long windowMillis,
+                          long localTimeToLiveMillis, int maxHotKeys) {
+        this.cacheName = cacheName;
+        this.sampleRate = sampleRate;
+        this.threshold = threshold;
+        this.localTimeToLiveMillis = localTimeToLiveMillis;
+        this.maxHotKeys = maxHotKeys;
+        this.sketch = new SlidingCountMinSketch(SKETCH_WIDTH, windowMillis, SLOT_COUNT);
+    }
+
+    /**
+     * 记录一次读取，并返回未过期的本地副本
+     * @return  本地副本，不是热点或者副本已过期时返回null
+     */
+    public Object get(String cacheKey) {
+        HotKey hotKey = hotKeys.get(cacheKey);
+        if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            long estimate = (long) (sketch.increment(hash(cacheKey)) / sampleRate);
+            if (hotKey != null) {
+                hotKey.estimate = estimate;
+                if (estimate < threshold) {
+                    hotKeys.remove(cacheKey, hotKey);
+                    log.info("热点key降级：cacheName = {}，key = {}", cacheName, cacheKey);
+                    return null;
+                }
+            } else if (estimate >= threshold && hotKeys.size() < maxHotKeys) {
+                hotKey = new HotKey(cacheKey, estimate);
+                if (hotKeys.putIfAbsent(cacheKey, hotKey) == null) {
+                    log.info("发现热点key：cacheName = {}，key = {}，窗口内读取次数约为{}", cacheName, cacheKey, estimate);
+                }
+                return null;
+            }
+        }
+
+        if (hotKey == null) {
+            return null;
+        }
+        Object value = hotKey.value;
+        if (value == null || System.currentTimeMillis() >= hotKey.expireAt) {
+            return null;
+        }
+        hotKey.localHits.increment();
+        return value;
+    }
+
+    /**
+     * 从redis读取之后调用，热点key保存本地副本
+     */
+    public void offer(String cacheKey, Object value) {
+        HotKey hotKey = hotKeys.get(cacheKey);
+        if (hotKey != null) {
+            hotKey.expireAt = System.currentTimeMillis() + localTimeToLiveMillis;
+            hotKey.value = value;
+        }
+    }
+
+    /**
+     * 删除本地副本，仍然保留热点的统计
+     */
+    public void invalidate(String cacheKey) {
+        HotKey hotKey = hotKeys.get(cacheKey);
+        if (hotKey != null) {
+            hotKey.value = null;
+        }
+    }
+
+    public void invalidateAll() {
+        hotKeys.values().forEach(hotKey -> hotKey.value = null);
+    }
+
+    /**
+     * 当前的热点key，按窗口内的读取次数从大到小排序
+     */
+    public List<HotKeyStats> getHotKeys() {
+        List<HotKeyStats> stats = new ArrayList<>(hotKeys.size());
+        hotKeys.values().forEach(hotKey -> {
+            HotKeyStats hotKeyStats = new HotKeyStats();
+            hotKeyStats.setCacheName(cacheName);
+            hotKeyStats.setKey(hotKey.key);
+            hotKeyStats.setEstimatedReads(hotKey.estimate);
+            hotKeyStats.setLocalHits(hotKey.localHits.sum());
+            hotKeyStats.setDetectedAt(hotKey.detectedAt);
+            stats.add(hotKeyStats);
+        });
+        stats.sort(Comparator.comparingLong(HotKeyStats::getEstimatedReads).reversed());
+        return stats;
+    }
+
+    private static long[] hash(String cacheKey) {
+        return Murmur3.hash128(cacheKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class HotKey {
+        final String key;
+        final long detectedAt = System.currentTimeMillis();
+        final LongAdder localHits = new LongAdder();
+        volatile long estimate;
+        volatile Object value;
+        volatile long expireAt;
+
+        HotKey(String key, long estimate) {
+            this.key = key;
+            this.estimate = estimate;
+        }
+    }
+
+    /**
+     * 热点key的统计快照
+     */
+    @Data
+    public static class HotKeyStats {
+        private String cacheName;
+        /**
+         * redis中的key
+         */
+        private String key;
+        /**
+         * 最近一次采样时，窗口内的读取次数的估计值
+         */
+        private long estimatedReads;
+        /**
+         * 使用本地副本的次数
+         */
+        private long localHits;
+        /**
+         * 成为热点的时间
+         */
+        private long detectedAt;
+    }
+}
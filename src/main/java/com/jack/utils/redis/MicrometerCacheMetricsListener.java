@@ -0,0 +1,142 @@
+package com.jack.utils.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.BeanFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把缓存的指标发布到Micrometer。只有引入了Micrometer时才会加载此类。
+ * <p></p>
+ * 指标名称与spring boot actuator的缓存指标保持一致：cache.gets（counter，带有result = hit/miss/absent标签，absent为布隆过滤器判断一定不存在的key）、cache.puts、cache.evictions，
+ * 另外增加cache.clears（counter）、cache.get.latency、cache.put.latency（timer）、cache.payload.size（distribution summary，单位：字节）。
+ * 所有指标都带有cache标签（cacheName）。
+ */
+public class MicrometerCacheMetricsListener implements CacheMetricsListener {
+
+    private final MeterRegistry meterRegistry;
+    private final boolean histogram;
+
+    /**
+     * key = cacheName
+     */
+    private final ConcurrentHashMap<String, Meters> meters = new ConcurrentHashMap<>();
+
+    MicrometerCacheMetricsListener(MeterRegistry meterRegistry, boolean histogram) {
+        this.meterRegistry = meterRegistry;
+        this.histogram = histogram;
+    }
+
+    /**
+     * @param histogram 延迟和缓存值大小是否发布直方图（用于计算分位数）
+     * @return  容器中没有MeterRegistry时返回null
+     */
+    public static MicrometerCacheMetricsListener create(BeanFactory beanFactory, boolean histogram) {
+        MeterRegistry meterRegistry = beanFactory.getBeanProvider(MeterRegistry.class).getIfAvailable();
+        return meterRegistry == null ? null : new MicrometerCacheMetricsListener(meterRegistry, histogram);
+    }
+
+    @Override
+    public void onGet(String cacheName, int hits, int misses, int absents, long durationNanos) {
+        Meters cacheMeters = getMeters(cacheName);
+        if (hits > 0) {
+            cacheMeters.hits.increment(hits);
+        }
+        if (misses > 0) {
+            cacheMeters.misses.increment(misses);
+        }
+        if (absents > 0) {
+            cacheMeters.absents.increment(absents);
+        }
+        cacheMeters.getLatency.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onPut(String cacheName, int count, long durationNanos) {
+        Meters cacheMeters = getMeters(cacheName);
+        cacheMeters.puts.increment(count);
+        cacheMeters.putLatency.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onPayload(String cacheName, int bytes) {
+        getMeters(cacheName).payloadSize.record(bytes);
+    }
+
+    @Override
+    public void onEvict(String cacheName) {
+        getMeters(cacheName).evictions.increment();
+    }
+
+    @Override
+    public void onClear(String cacheName) {
+        getMeters(cacheName).clears.increment();
+    }
+
+    private Meters getMeters(String cacheName) {
+        Meters cacheMeters = meters.get(cacheName);
+        if (cacheMeters == null) {
+            cacheMeters = meters.computeIfAbsent(cacheName, Meters::new);
+        }
+        return cacheMeters;
+    }
+
+    private final class Meters {
+        private final Counter hits;
+        private final Counter misses;
+        private final Counter absents;
+        private final Counter puts;
+        private final Counter evictions;
+        private final Counter clears;
+        private final Timer getLatency;
+        private final Timer putLatency;
+        private final DistributionSummary payloadSize;
+
+        Meters(String cacheName) {
+            this.hits = Counter.builder("cache.gets")
+                    .description("缓存命中的次数")
+                    .tag("cache", cacheName).tag("result", "hit")
+                    .register(meterRegistry);
+            this.misses = Counter.builder("cache.gets")
+                    .description("缓存未命中的次数")
+                    .tag("cache", cacheName).tag("result", "miss")
+                    .register(meterRegistry);
+            this.absents = Counter.builder("cache.gets")
+                    .description("布隆过滤器判断一定不存在的次数")
+                    .tag("cache", cacheName).tag("result", "absent")
+                    .register(meterRegistry);
+            this.puts = Counter.builder("cache.puts")
+                    .description("写入缓存的次数")
+                    .tag("cache", cacheName)
+                    .register(meterRegistry);
+            this.evictions = Counter.builder("cache.evictions")
+                    .description("删除缓存的次数")
+                    .tag("cache", cacheName)
+                    .register(meterRegistry);
+            this.clears = Counter.builder("cache.clears")
+                    .description("清空缓存的次数")
+                    .tag("cache", cacheName)
+                    .register(meterRegistry);
+            this.getLatency = Timer.builder("cache.get.latency")
+                    .description("读取缓存的耗时")
+                    .tag("cache", cacheName)
+                    .publishPercentileHistogram(histogram)
+                    .register(meterRegistry);
+            this.putLatency = Timer.builder("cache.put.latency")
+                    .description("写入缓存的耗时")
+                    .tag("cache", cacheName)
+                    .publishPercentileHistogram(histogram)
+                    .register(meterRegistry);
+            this.payloadSize = DistributionSummary.builder("cache.payload.size")
+                    .description("写入redis的缓存值序列化之后的大小")
+                    .baseUnit("bytes")
+                    .tag("cache", cacheName)
+                    .publishPercentileHistogram(histogram)
+                    .register(meterRegistry);
+        }
+    }
+}
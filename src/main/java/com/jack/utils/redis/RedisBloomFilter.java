@@ -0,0 +1,168 @@
+package com.jack.utils.redis;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 布隆过滤器，记录已知存在的key。判断不存在时一定不存在，判断存在时有一定的误判率。
+ * <p></p>
+ * 位图同时保存在内存和redis中（redis的bitmap，key为{redisKey}:{位数}:{哈希函数个数}，调整容量或误判率后使用新的位图）：
+ * 创建时从redis加载，写入时同时写内存和redis；内存中判断不存在时再查询一次redis，能够读到其他节点写入的key。
+ * 布隆过滤器不支持删除，数据删除后仍然判断为存在，只是不再拦截。
+ */
+public class RedisBloomFilter {
+
+    /**
+     * redis的bitmap最多2^32位
+     */
+    private static final long MAX_BITS = 1L << 32;
+
+    private final StringRedisTemplate redisTemplate;
+    private final byte[] redisKey;
+    private final long numBits;
+    private final int numHashFunctions;
+    private final AtomicLongArray bits;
+
+    /**
+     * @param expectedInsertions        预计的key的数量
+     * @param falsePositiveProbability  期望的误判率，(0, 1)
+     */
+    public RedisBloomFilter(StringRedisTemplate redisTemplate, String redisKey, long expectedInsertions, double falsePositiveProbability) {
+        Assert.isTrue(expectedInsertions > 0, "expectedInsertions必须大于0");
+        Assert.isTrue(falsePositiveProbability > 0 && falsePositiveProbability < 1, "falsePositiveProbability必须在(0, 1)之间");
+        long numBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        Assert.isTrue(numBits <= MAX_BITS, "布隆过滤器超过redis bitmap的最大长度，请减小expectedInsertions或增大falsePositiveProbability");
+
+        this.redisTemplate = redisTemplate;
+        this.numBits = Math.max(numBits, Long.SIZE);
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) this.numBits / expectedInsertions * Math.log(2)));
+        this.redisKey = (redisKey + ":" + this.numBits + ":" + numHashFunctions).getBytes(StandardCharsets.UTF_8);
+        this.bits = new AtomicLongArray((int) ((this.numBits + Long.SIZE - 1) / Long.SIZE));
+        load();
+    }
+
+    /**
+     * @return  false：一定不存在；true：可能存在
+     */
+    public boolean mightContain(String key) {
+        long[] offsets = offsets(key);
+        if (isSetLocally(offsets)) {
+            return true;
+        }
+
+        // 可能是其他节点写入的
+        List<Object> remoteBits = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.stringCommands().getBit(redisKey, offset);
+            }
+            return null;
+        });
+        for (Object remoteBit : remoteBits) {
+            if (!Boolean.TRUE.equals(remoteBit)) {
+                return false;
+            }
+        }
+        setLocally(offsets);
+        return true;
+    }
+
+    public void put(String key) {
+        long[] offsets = offsets(key);
+        if (isSetLocally(offsets)) {
+            return;
+        }
+        setLocally(offsets);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.stringCommands().setBit(redisKey, offset, true);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 批量写入，通过一次pipeline写入redis
+     */
+    public void putAll(Collection<String> keys) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                long[] offsets = offsets(key);
+                if (isSetLocally(offsets)) {
+                    continue;
+                }
+                setLocally(offsets);
+                for (long offset : offsets) {
+                    connection.stringCommands().setBit(redisKey, offset, true);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 从redis加载位图。redis的bitmap中第0位为第一个字节的最高位
+     */
+    private void load() {
+        byte[] bytes = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(redisKey));
+        if (bytes == null) {
+            return;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == 0) {
+                continue;
+            }
+            for (int bit = 0; bit < Byte.SIZE; bit++) {
+                long offset = (long) i * Byte.SIZE + bit;
+                if ((bytes[i] & (0x80 >>> bit)) != 0 && offset < numBits) {
+                    setBit(offset);
+                }
+            }
+        }
+    }
+
+    /**
+     * murmur3 128位哈希的两个64位结果组合出numHashFunctions个位置（Kirsch-Mitzenmacher）
+     */
+    private long[] offsets(String key) {
+        long[] hash = Murmur3.hash128(key.getBytes(StandardCharsets.UTF_8));
+        long[] offsets = new long[numHashFunctions];
+        long combined = hash[0];
+        for (int i = 0; i < numHashFunctions; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+
+    private boolean isSetLocally(long[] offsets) {
+        for (long offset : offsets) {
+            if ((bits.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setLocally(long[] offsets) {
+        for (long offset : offsets) {
+            setBit(offset);
+        }
+    }
+
+    private void setBit(long offset) {
+        int index = (int) (offset >>> 6);
+        long mask = 1L << offset;
+        long word;
+        while (((word = bits.get(index)) & mask) == 0) {
+            if (bits.compareAndSet(index, word, word | mask)) {
+                return;
+            }
+        }
+    }
+}
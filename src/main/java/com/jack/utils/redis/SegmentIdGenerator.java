@@ -0,0 +1,151 @@
+package com.jack.utils.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 号段模式的分布式id生成器，每个业务（例如订单）一个实例。
+ * <p></p>
+ * 每次通过redis的INCRBY申请一个号段（step个连续的id），号段内的id在本地通过原子计数器分配，不需要访问redis；
+ * 当前号段使用了prefetchRatio之后，在后台异步申请下一个号段，当前号段用完时直接切换，不需要等待。
+ * 各个节点的号段互不重叠，生成的id全局唯一、趋势递增（不保证严格递增），应用重启时未用完的号段会被跳过。
+ * <p></p>
+ * redis中的计数器与INCR生成id时使用的计数器兼容，可以直接使用原来的key，新生成的id从原来的值继续递增。例如：
+ * <blockquote><pre>
+ *     &#64;Bean
+ *     public SegmentIdGenerator orderIdGenerator(RedisConnectionFactory redisConnectionFactory) {
+ *         return new SegmentIdGenerator(redisConnectionFactory, "order");
+ *     }
+ *
+ *     long orderId = orderIdGenerator.nextId();
+ * </pre></blockquote>
+ */
+@Slf4j
+public class SegmentIdGenerator {
+
+    /**
+     * 所有生成器共用的预取线程
+     */
+    private static final ExecutorService PREFETCH_EXECUTOR;
+
+    static {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "segment-id-prefetch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        PREFETCH_EXECUTOR = executor;
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final String redisKey;
+    private final int step;
+    private final long prefetchThreshold;
+
+    private volatile Segment current = new Segment(0L, 0L);
+
+    /**
+     * 正在申请或者已经申请到的下一个号段，为null时还没有开始申请
+     */
+    private volatile CompletableFuture<Segment> next;
+
+    /**
+     * 使用默认配置：redis key为jack:id:{bizKey}，每个号段1000个id，使用80%之后预取下一个号段
+     */
+    public SegmentIdGenerator(RedisConnectionFactory redisConnectionFactory, String bizKey) {
+        this(redisConnectionFactory, "jack:id:" + bizKey, 1000, 0.8D);
+    }
+
+    /**
+     * @param redisKey      保存计数器的redis key
+     * @param step          每个号段的id数量
+     * @param prefetchRatio 当前号段使用了多少比例之后预取下一个号段，(0, 1]
+     */
+    public SegmentIdGenerator(RedisConnectionFactory redisConnectionFactory, String redisKey, int step, double prefetchRatio) {
+        Assert.isTrue(step > 0, "step必须大于0");
+        Assert.isTrue(prefetchRatio > 0 && prefetchRatio <= 1, "prefetchRatio必须在(0, 1]之间");
+        this.redisTemplate = new StringRedisTemplate(redisConnectionFactory);
+        this.redisKey = redisKey;
+        this.step = step;
+        this.prefetchThreshold = Math.max(0L, (long) Math.ceil(step * prefetchRatio) - 1);
+    }
+
+    /**
+     * 生成下一个id
+     */
+    public long nextId() {
+        for (;;) {
+            Segment segment = current;
+            long id = segment.cursor.getAndIncrement();
+            if (id < segment.end) {
+                if (id - segment.start == prefetchThreshold) {
+                    prefetch();
+                }
+                return id;
+            }
+            switchSegment(segment);
+        }
+    }
+
+    /**
+     * 当前号段用完，切换到下一个号段。预取还没有完成时等待，预取失败时同步申请
+     */
+    private synchronized void switchSegment(Segment exhausted) {
+        if (current != exhausted) {
+            // 其他线程已经切换
+            return;
+        }
+
+        CompletableFuture<Segment> future = next;
+        next = null;
+        Segment segment = null;
+        if (future != null) {
+            try {
+                segment = future.join();
+            } catch (CompletionException e) {
+                log.warn("预取号段失败，重新申请：{}", redisKey, e.getCause());
+            }
+        }
+        current = segment != null ? segment : allocate();
+    }
+
+    private synchronized void prefetch() {
+        if (next == null) {
+            next = CompletableFuture.supplyAsync(this::allocate, PREFETCH_EXECUTOR);
+        }
+    }
+
+    /**
+     * 通过INCRBY申请一个号段
+     */
+    private Segment allocate() {
+        Long max = redisTemplate.opsForValue().increment(redisKey, step);
+        if (max == null) {
+            throw new IllegalStateException("申请号段失败：" + redisKey);
+        }
+        return new Segment(max - step + 1, max + 1);
+    }
+
+    /**
+     * 号段[start, end)
+     */
+    private static final class Segment {
+        final long start;
+        final long end;
+        final AtomicLong cursor;
+
+        Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.cursor = new AtomicLong(start);
+        }
+    }
+}
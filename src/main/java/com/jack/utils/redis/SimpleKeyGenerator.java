@@ -1,15 +1,90 @@
 package com.jack.utils.redis;
 
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.jack.utils.config.RedisProperties;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.cache.interceptor.KeyGenerator;
 import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.core.MethodClassKey;
+import org.springframework.util.ClassUtils;
 
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.TemporalAccessor;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SimpleKeyGenerator implements KeyGenerator {
 
+    /**
+     * 紧凑模式下原样保留的字符串的最大长度，更长的字符串使用摘要
+     */
+    private static final int MAX_PLAIN_LENGTH = 32;
+
+    /**
+     * 紧凑模式下参数部分的最大长度，超过时对整个参数部分使用摘要
+     */
+    private static final int MAX_ARGS_LENGTH = 128;
+
+    private static final String NULL = "~";
+    private static final String HASH = "#";
+    private static final char SEPARATOR = ':';
+
+    /**
+     * 与缓存值的序列化一致，按字段而不是getter序列化，没有getter的参数也能区分内容
+     */
+    private static final ObjectMapper DIGEST_MAPPER = JsonMapper.builder()
+            .visibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+            .visibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .build();
+
+    /**
+     * 参数的实际类型与声明的类型不同时，原样保留的参数的类型标记。其他类型的参数连同类名计算摘要
+     */
+    private static final Map<Class<?>, Character> TYPE_TAGS = new HashMap<>();
+
+    static {
+        TYPE_TAGS.put(String.class, 's');
+        TYPE_TAGS.put(Long.class, 'l');
+        TYPE_TAGS.put(Integer.class, 'i');
+        TYPE_TAGS.put(Boolean.class, 'b');
+    }
+
+    /**
+     * 紧凑模式下每个目标类的每个方法的前缀
+     */
+    private static final Map<MethodClassKey, String> METHOD_PREFIXES = new ConcurrentHashMap<>();
+
+    private final RedisProperties.KeyGeneratorMode mode;
+
+    public SimpleKeyGenerator() {
+        this(RedisProperties.KeyGeneratorMode.SIMPLE);
+    }
+
+    public SimpleKeyGenerator(RedisProperties.KeyGeneratorMode mode) {
+        this.mode = mode;
+    }
+
     @Override
     public Object generate(Object target, Method method, Object... params) {
-        return generateKey(method, params);
+        return mode == RedisProperties.KeyGeneratorMode.COMPACT
+                ? generateCompactKey(AopUtils.getTargetClass(target), method, params)
+                : generateKey(method, params);
     }
 
     /**
@@ -34,4 +109,135 @@ public class SimpleKeyGenerator implements KeyGenerator {
         return new SimpleKey(newParamArray);
     }
 
-}
\ No newline at end of file
+    /**
+     * 生成紧凑的key，例如：UserService.getById~2ae3keuitge0e:42
+     * <p></p>
+     * 前缀为目标类的类名、方法名和目标类全名 + 完整方法签名（包括包名、参数类型）的64位murmur3摘要，
+     * 不同类的同名方法、重载的方法、继承自同一个父类的方法都不会冲突；
+     * 数字、布尔、枚举、日期和较短的字符串原样保留，其他参数（集合、对象等）使用128位的murmur3摘要。
+     * 参数的实际类型与声明的类型不同时（例如声明为Object、Serializable或者泛型），原样保留的参数前增加一个字符的类型标记
+     * （字符串s、Long为l、Integer为i、布尔为b），其他类型的参数连同类名计算摘要，所以"1"、1和1L不会冲突。
+     * key的长度有上限，参数部分过长时对整个参数部分使用摘要。
+     */
+    public static String generateCompactKey(Class<?> targetClass, Method method, Object... params) {
+        String prefix = METHOD_PREFIXES.computeIfAbsent(new MethodClassKey(method, targetClass),
+                methodClassKey -> methodPrefix(targetClass, method));
+        if (params.length == 0) {
+            return prefix;
+        }
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        StringBuilder args = new StringBuilder();
+        for (int i = 0; i < params.length; i++) {
+            args.append(SEPARATOR);
+            appendParam(args, i < parameterTypes.length ? parameterTypes[i] : Object.class, params[i]);
+        }
+        if (args.length() > MAX_ARGS_LENGTH) {
+            return prefix + SEPARATOR + HASH + digest(args.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return prefix + args;
+    }
+
+    private static String methodPrefix(Class<?> targetClass, Method method) {
+        String signature = targetClass.getName() + ' ' + method;
+        long signatureHash = Murmur3.hash128(signature.getBytes(StandardCharsets.UTF_8))[0];
+        return targetClass.getSimpleName() + '.' + method.getName() + '~' + Long.toUnsignedString(signatureHash, 36);
+    }
+
+    /**
+     * @param declaredType  方法中声明的参数类型
+     */
+    private static void appendParam(StringBuilder args, Class<?> declaredType, Object param) {
+        if (param == null) {
+            args.append(NULL);
+            return;
+        }
+        Class<?> scalarType = scalarType(param);
+        if (scalarType == null) {
+            args.append(HASH).append(digest(toDigestBytes(param)));
+            return;
+        }
+
+        String value = scalarText(param);
+        if (scalarType == ClassUtils.resolvePrimitiveIfNecessary(declaredType)) {
+            // 参数类型已经包含在方法签名的摘要中，不需要类型标记
+            if (isPlain(value)) {
+                args.append(value);
+            } else {
+                args.append(HASH).append(digest(value.getBytes(StandardCharsets.UTF_8)));
+            }
+            return;
+        }
+
+        Character typeTag = TYPE_TAGS.get(scalarType);
+        if (typeTag != null && isPlain(value)) {
+            args.append(typeTag.charValue()).append(value);
+        } else {
+            byte[] typeName = scalarType.getName().getBytes(StandardCharsets.UTF_8);
+            byte[] text = value.getBytes(StandardCharsets.UTF_8);
+            args.append(HASH).append(digest(ByteBuffer.allocate(typeName.length + 1 + text.length)
+                    .put(typeName).put((byte) 0).put(text).array()));
+        }
+    }
+
+    /**
+     * @return  字符串、数字、布尔、枚举、UUID、日期的类型（枚举为声明常量的枚举类），其他参数返回null
+     */
+    private static Class<?> scalarType(Object param) {
+        if (param instanceof Enum) {
+            return ((Enum<?>) param).getDeclaringClass();
+        }
+        if (param instanceof CharSequence || param instanceof Number || param instanceof Boolean
+                || param instanceof UUID || param instanceof TemporalAccessor || param instanceof Date) {
+            return param.getClass();
+        }
+        return null;
+    }
+
+    private static String scalarText(Object param) {
+        if (param instanceof Enum) {
+            return ((Enum<?>) param).name();
+        }
+        if (param instanceof Date) {
+            return Long.toString(((Date) param).getTime());
+        }
+        return param.toString();
+    }
+
+    /**
+     * 只包含字母、数字和-_.的较短的字符串原样保留，不会与分隔符、null、摘要混淆
+     */
+    private static boolean isPlain(String value) {
+        if (value.isEmpty() || value.length() > MAX_PLAIN_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_' || c == '.')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 复杂参数按类名 + 排序后的json计算摘要，相同内容的参数在各个节点上得到相同的摘要。
+     * 集合、Map、数组不包括类名，与equals一致（例如内容相同的HashMap和LinkedHashMap得到相同的摘要）
+     */
+    private static byte[] toDigestBytes(Object param) {
+        try {
+            boolean container = param instanceof Collection || param instanceof Map || param.getClass().isArray();
+            byte[] typeName = container ? new byte[0] : param.getClass().getName().getBytes(StandardCharsets.UTF_8);
+            byte[] json = DIGEST_MAPPER.writeValueAsBytes(param);
+            return ByteBuffer.allocate(typeName.length + 1 + json.length).put(typeName).put((byte) 0).put(json).array();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("无法生成缓存key，参数不能转换为json：" + param.getClass().getName(), e);
+        }
+    }
+
+    private static String digest(byte[] bytes) {
+        long[] hash = Murmur3.hash128(bytes);
+        byte[] digest = ByteBuffer.allocate(16).putLong(hash[0]).putLong(hash[1]).array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+}
@@ -0,0 +1,94 @@
+package com.jack.utils.redis;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 滑动窗口的count-min sketch：窗口分为若干个时间片，每个时间片一个sketch，估计值为窗口内所有时间片的估计值之和。
+ * 时间片过期时清零后复用，内存占用固定：slots * depth * width个int。
+ * <p></p>
+ * 估计值只会偏大不会偏小，width越大偏差越小。计数不加锁，时间片切换期间的少量计数可能丢失，用于热点判断足够。
+ */
+final class SlidingCountMinSketch {
+
+    private static final int DEPTH = 4;
+
+    private final int width;
+    private final long slotMillis;
+    private final AtomicIntegerArray[] slots;
+
+    /**
+     * 当前时间片的序号（currentTimeMillis / slotMillis）
+     */
+    private volatile long currentSlot;
+
+    /**
+     * @param width         每一行的计数器数量，会向上取整为2的幂
+     * @param windowMillis  窗口长度
+     * @param slotCount     窗口分为多少个时间片
+     */
+    SlidingCountMinSketch(int width, long windowMillis, int slotCount) {
+        this.width = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+        this.slotMillis = Math.max(1L, windowMillis / slotCount);
+        this.slots = new AtomicIntegerArray[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new AtomicIntegerArray(DEPTH * this.width);
+        }
+        this.currentSlot = System.currentTimeMillis() / slotMillis;
+    }
+
+    /**
+     * 计数加1
+     * @param hash  key的两个64位哈希值（例如murmur3 128位）
+     * @return  加1之后窗口内的估计值
+     */
+    int increment(long[] hash) {
+        AtomicIntegerArray current = slots[(int) (rotate() % slots.length)];
+        for (int row = 0; row < DEPTH; row++) {
+            current.incrementAndGet(index(hash, row));
+        }
+        return estimate(hash);
+    }
+
+    int estimate(long[] hash) {
+        rotate();
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            int sum = 0;
+            for (AtomicIntegerArray slot : slots) {
+                sum += slot.get(index);
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    private int index(long[] hash, int row) {
+        return row * width + (int) ((hash[0] + row * hash[1]) & (width - 1));
+    }
+
+    /**
+     * 切换到当前时间片，清零期间经过的时间片
+     * @return  当前时间片的序号
+     */
+    private long rotate() {
+        long slot = System.currentTimeMillis() / slotMillis;
+        if (slot == currentSlot) {
+            return slot;
+        }
+        synchronized (this) {
+            long previous = currentSlot;
+            if (slot > previous) {
+                long expired = Math.min(slot - previous, slots.length);
+                for (long i = 1; i <= expired; i++) {
+                    AtomicIntegerArray reused = slots[(int) ((previous + i) % slots.length)];
+                    for (int j = 0; j < reused.length(); j++) {
+                        reused.set(j, 0);
+                    }
+                }
+                currentSlot = slot;
+            }
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,146 @@
+package com.jack.utils.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 二级缓存：本地缓存（caffeine） + redis。
+ * <p></p>
+ * 读取时先查本地缓存，未命中再查redis，并回填本地缓存；写入、删除时同时更新两级缓存，
+ * 并通过redis的发布订阅通知其他节点删除各自的本地缓存。本地缓存以redis中的key作为key，可以直接在节点之间传递。
+ * <p></p>
+ * 本地缓存中保存的是反序列化之后的对象，同一个节点的多次读取返回的是同一个对象，不要修改缓存中取出的对象。
+ */
+public class TwoLevelCache extends EnhancedRedisCache {
+
+    private final Cache<String, Object> localCache;
+    private final TwoLevelCacheManager cacheManager;
+
+    protected TwoLevelCache(String name, RedisCacheWriter cacheWriter, RedisCacheConfiguration cacheConfig,
+                            CacheOptions options, Cache<String, Object> localCache, TwoLevelCacheManager cacheManager) {
+        super(name, cacheWriter, cacheConfig, options, cacheManager);
+        this.localCache = localCache;
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * 本地缓存命中时，不知道redis中的过期时间，不会触发提前刷新
+     */
+    @Override
+    protected Entry lookupFreshEntry(Object key) {
+        String cacheKey = createCacheKey(key);
+        Object value = localCache.getIfPresent(cacheKey);
+        if (value != null) {
+            return new Entry(value, Long.MAX_VALUE);
+        }
+
+        Entry entry = super.lookupFreshEntry(key);
+        if (entry != null) {
+            localCache.put(cacheKey, entry.value);
+        }
+        return entry;
+    }
+
+    @Override
+    protected Map<Object, ValueWrapper> lookupAll(Collection<?> keys) {
+        Map<Object, ValueWrapper> result = new LinkedHashMap<>();
+        Map<Object, String> missingKeys = new LinkedHashMap<>();
+        for (Object key : keys) {
+            String cacheKey = createCacheKey(key);
+            Object value = localCache.getIfPresent(cacheKey);
+            if (value != null) {
+                result.put(key, toValueWrapper(value));
+            } else {
+                missingKeys.put(key, cacheKey);
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return result;
+        }
+
+        super.lookupAll(missingKeys.keySet()).forEach((key, valueWrapper) -> {
+            localCache.put(missingKeys.get(key), toStoreValue(valueWrapper.get()));
+            result.put(key, valueWrapper);
+        });
+        return result;
+    }
+
+    @Override
+    public void putAll(Map<?, ?> values) {
+        super.putAll(values);
+        Set<String> cacheKeys = new LinkedHashSet<>(values.size());
+        values.forEach((key, value) -> {
+            String cacheKey = createCacheKey(key);
+            localCache.put(cacheKey, toStoreValue(value));
+            cacheKeys.add(cacheKey);
+        });
+        cacheManager.publishBatchInvalidation(getName(), cacheKeys);
+    }
+
+    /**
+     * 预热的数据直接来自数据源，不通知其他节点，其他节点的本地缓存最多在本地过期时间之后失效
+     */
+    @Override
+    public void warmUp(Map<?, ?> values, boolean populateLocal) {
+        super.warmUp(values, populateLocal);
+        if (populateLocal) {
+            values.forEach((key, value) -> localCache.put(createCacheKey(key), toStoreValue(value)));
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        super.put(key, value);
+        String cacheKey = createCacheKey(key);
+        localCache.put(cacheKey, toStoreValue(value));
+        cacheManager.publishInvalidation(getName(), cacheKey);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = super.putIfAbsent(key, value);
+        String cacheKey = createCacheKey(key);
+        if (existing == null) {
+            localCache.put(cacheKey, toStoreValue(value));
+            cacheManager.publishInvalidation(getName(), cacheKey);
+        } else {
+            localCache.put(cacheKey, toStoreValue(existing.get()));
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        super.evict(key);
+        String cacheKey = createCacheKey(key);
+        localCache.invalidate(cacheKey);
+        cacheManager.publishInvalidation(getName(), cacheKey);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        localCache.invalidateAll();
+        cacheManager.publishInvalidation(getName(), null);
+    }
+
+    /**
+     * 只删除本地缓存，收到其他节点的通知时调用
+     * @param cacheKey  redis中的key，为null时删除全部
+     */
+    void evictLocal(String cacheKey) {
+        if (cacheKey == null) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(cacheKey);
+        }
+        invalidateHotKey(cacheKey);
+    }
+}
@@ -0,0 +1,179 @@
+package com.jack.utils.redis;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二级缓存管理器，创建的缓存为{@link TwoLevelCache}：本地缓存（caffeine） + redis。
+ * <p></p>
+ * 写入、删除缓存时，通过redis的发布订阅通知其他节点删除各自的本地缓存。通知只保证尽量送达：
+ * 节点断开与redis的连接期间收不到通知，本地缓存最多在本地过期时间之后失效，所以本地过期时间应该设置得比较短。
+ */
+@Slf4j
+public class TwoLevelCacheManager extends EnhancedRedisCacheManager implements DisposableBean {
+
+    private static final String NODE = "node";
+    private static final String CACHE = "cache";
+    private static final String KEY = "key";
+    private static final String KEYS = "keys";
+
+    /**
+     * 批量删除时一条通知最多包含的key数量，避免单条消息过大
+     */
+    private static final int MAX_KEYS_PER_MESSAGE = 1000;
+
+    private final long localMaximumSize;
+    private final long localTimeToLiveSeconds;
+    private final String channel;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 当前节点的标识，忽略自己发出的通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * @param localMaximumSize          每个缓存在本地最多保存的数量
+     * @param localTimeToLiveSeconds    本地缓存过期时间，单位：秒
+     * @param channel                   通知其他节点删除本地缓存的redis频道
+     */
+    public TwoLevelCacheManager(RedisConnectionFactory redisConnectionFactory, RedisCacheWriter cacheWriter,
+                                RedisCacheConfiguration defaultCacheConfig,
+                                Map<String, RedisCacheConfiguration> initialCacheConfigurations,
+                                CacheOptions defaultCacheOptions, Map<String, CacheOptions> cacheOptions,
+                                long localMaximumSize, long localTimeToLiveSeconds, String channel) {
+        super(redisConnectionFactory, cacheWriter, defaultCacheConfig, initialCacheConfigurations, defaultCacheOptions, cacheOptions);
+        this.localMaximumSize = localMaximumSize;
+        this.localTimeToLiveSeconds = localTimeToLiveSeconds;
+        this.channel = channel;
+        this.listenerContainer = new RedisMessageListenerContainer();
+        this.listenerContainer.setConnectionFactory(redisConnectionFactory);
+        this.listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(channel));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        super.destroy();
+        listenerContainer.destroy();
+    }
+
+    @Override
+    protected RedisCache createRedisCache(String name, RedisCacheConfiguration cacheConfig) {
+        return new TwoLevelCache(name, getCacheWriter(), getCacheConfig(cacheConfig), getCacheOptions(name),
+                Caffeine.newBuilder()
+                        .maximumSize(localMaximumSize)
+                        .expireAfterWrite(localTimeToLiveSeconds, TimeUnit.SECONDS)
+                        .build(),
+                this);
+    }
+
+    /**
+     * 通知其他节点删除本地缓存
+     * @param cacheKey  redis中的key，为null时删除整个缓存
+     */
+    void publishInvalidation(String cacheName, String cacheKey) {
+        JSONObject message = new JSONObject();
+        message.put(NODE, nodeId);
+        message.put(CACHE, cacheName);
+        message.put(KEY, cacheKey);
+        try {
+            getRedisTemplate().convertAndSend(channel, message.toJSONString());
+        } catch (Exception e) {
+            log.warn("通知其他节点删除本地缓存失败：cacheName = {}，key = {}", cacheName, cacheKey, e);
+        }
+    }
+
+    /**
+     * 通知其他节点批量删除本地缓存，每{@value #MAX_KEYS_PER_MESSAGE}个key发送一条通知
+     * <p>
+     * 旧版本的节点不认识keys字段，会当作删除整个缓存处理，只会多删，不会漏删
+     * @param cacheKeys redis中的key
+     */
+    void publishBatchInvalidation(String cacheName, Collection<String> cacheKeys) {
+        if (cacheKeys.isEmpty()) {
+            return;
+        }
+        List<String> batch = new ArrayList<>(Math.min(cacheKeys.size(), MAX_KEYS_PER_MESSAGE));
+        for (String cacheKey : cacheKeys) {
+            batch.add(cacheKey);
+            if (batch.size() == MAX_KEYS_PER_MESSAGE) {
+                publishInvalidationBatch(cacheName, batch);
+                batch = new ArrayList<>(MAX_KEYS_PER_MESSAGE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            publishInvalidationBatch(cacheName, batch);
+        }
+    }
+
+    private void publishInvalidationBatch(String cacheName, List<String> cacheKeys) {
+        JSONObject message = new JSONObject();
+        message.put(NODE, nodeId);
+        message.put(CACHE, cacheName);
+        message.put(KEYS, cacheKeys);
+        try {
+            getRedisTemplate().convertAndSend(channel, message.toJSONString());
+        } catch (Exception e) {
+            log.warn("通知其他节点删除本地缓存失败：cacheName = {}，keys = {}", cacheName, cacheKeys.size(), e);
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        JSONObject body;
+        try {
+            body = JSONObject.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            log.warn("无法解析删除本地缓存的通知：{}", message, e);
+            return;
+        }
+        if (body == null || body.getString(CACHE) == null || nodeId.equals(body.getString(NODE))) {
+            return;
+        }
+
+        // 只处理当前节点已经创建的缓存
+        Cache cache = lookupCache(body.getString(CACHE));
+        if (cache instanceof TransactionAwareCacheDecorator) {
+            cache = ((TransactionAwareCacheDecorator) cache).getTargetCache();
+        }
+        if (cache instanceof TwoLevelCache) {
+            JSONArray keys = body.getJSONArray(KEYS);
+            if (keys != null) {
+                TwoLevelCache twoLevelCache = (TwoLevelCache) cache;
+                keys.forEach(key -> twoLevelCache.evictLocal((String) key));
+                return;
+            }
+            if (body.getString(KEY) == null && getCacheGenerations() != null) {
+                // 其他节点清空了缓存（递增了版本号），先读取新版本，避免删除后又从旧版本填充本地缓存
+                getCacheGenerations().refresh(cache.getName());
+            }
+            ((TwoLevelCache) cache).evictLocal(body.getString(KEY));
+        }
+    }
+}
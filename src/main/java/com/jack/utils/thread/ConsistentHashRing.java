@@ -0,0 +1,61 @@
+package com.jack.utils.thread;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一致性哈希环。每个节点对应多个虚拟节点，使得任务在节点之间分布得更均匀；节点加入或离开时，只有少量任务需要迁移。
+ * <p></p>
+ * 创建后不可修改，节点变化时重新创建即可。
+ */
+final class ConsistentHashRing {
+
+    /**
+     * 每个节点对应的虚拟节点数量
+     */
+    private static final int VIRTUAL_NODES = 160;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    ConsistentHashRing(Collection<String> nodes) {
+        for (String node : nodes) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * 获取负责指定key的节点
+     * @param key   例如：任务id
+     * @return  节点。如果环上没有节点，返回null
+     */
+    String getNode(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * 64位的FNV-1a哈希，再经过murmur3的fmix64打散
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
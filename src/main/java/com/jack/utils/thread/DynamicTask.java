@@ -1,26 +1,42 @@
 package com.jack.utils.thread;
 
+import com.jack.utils.config.DynamicTaskProperties;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Conditional;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.SchedulingConfigurer;
-import org.springframework.scheduling.config.CronTask;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.scheduling.config.ScheduledTaskRegistrar;
-import org.springframework.scheduling.support.CronSequenceGenerator;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.scheduling.support.CronTrigger;
 import org.springframework.scheduling.support.PeriodicTrigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 /**
  * 动态创建定时任务的工具类。支持对定时任务进行更新，比如重新指定cron表达式。
@@ -41,138 +57,652 @@ import java.util.stream.Collectors;
  * 示例中的doSomething()方法，就可以定义当定时任务执行时的业务逻辑。
  * <p></p>
  * 如果要更新定时任务的cron表达式，只需再次添加任务即可（任务id需要保持一致）。类似于上面的例子。
+ * <p></p>
+ * 除了cron表达式，还支持fixed-rate、fixed-delay、one-shot三种触发方式（参考{@link TriggerType}），精度为毫秒，
+ * 并且可以指定随机抖动，避免大量周期相同的定时任务在同一时刻触发：
+ * <blockquote><pre>
+ *     DynamicTask.TaskConstant taskConstant = new DynamicTask.TaskConstant(taskId -> poll());
+ *     taskConstant.setTaskId("poll-1");
+ *     taskConstant.setTriggerType(DynamicTask.TriggerType.FIXED_RATE);
+ *     taskConstant.setPeriodMillis(500);
+ *     taskConstant.setJitterMillis(100);
+ *     dynamicTask.addTask(taskConstant);
+ * </pre></blockquote>
+ * <p></p>
+ * 定时任务的添加、删除、更新都会立即生效。如果需要一次性同步大量的定时任务（例如从数据库加载），
+ * 可以使用{@link #addTasks(Collection)}、{@link #replaceAll(Collection)}。
+ * <p></p>
+ * 如果配置了持久化存储（参考{@link DynamicTaskStore}），通过处理器名称（{@link TaskConstant#TaskConstant(String)}）
+ * 创建的定时任务会被保存，应用重启后自动加载，并按照补偿策略处理重启期间错过的触发。
  */
 @Component
 @Slf4j
 @EnableScheduling
 @Conditional(SpringBootVersionCondiction.class)
+@EnableConfigurationProperties(DynamicTaskProperties.class)
 public class DynamicTask implements SchedulingConfigurer {
 
     /**
-     * 触发器触发周期，单位：秒。此参数决定了在定时任务的cron表达式发生变化之后，新的cron表达式生效所需要的最大时间。
-     *
+     * 任务id的前缀
      */
-    private static final long triggerPeriod = 5L;
+    private static final String TASK_ID_PREFIX = "dynamic-task-";
+
+    @Autowired
+    private DynamicTaskProperties dynamicTaskProperties;
+
+    private volatile ScheduledTaskRegistrar registrar;
 
     /**
-     * corePoolSize = 0，maximumPoolSize = Integer.MAX_VALUE，即线程数量几乎无限制；
-     * keepAliveTime = 60s，线程空闲60s后自动结束。
-     * workQueue 为 SynchronousQueue 同步队列，这个队列类似于一个接力棒，入队出队必须同时传递，因为CachedThreadPool线程创建无限制，不会有队列等待，所以使用SynchronousQueue；
+     * 时间轮调度器。只在配置项jack.task.scheduler-type = hashed-wheel时创建
      */
-    private static final ExecutorService es = new ThreadPoolExecutor(10,
-            10,
-            60L,
-            TimeUnit.SECONDS,
-            new SynchronousQueue<>());
+    private HashedWheelTaskScheduler wheelTaskScheduler;
 
+    /**
+     * 执行定时任务的线程池
+     */
+    private DynamicTaskExecutor taskExecutor;
 
-    private volatile ScheduledTaskRegistrar registrar;
-    private final ConcurrentHashMap<String, ScheduledFuture<?>> scheduledFutures = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, CronTask> cronTasks = new ConcurrentHashMap<>();
+    @Autowired
+    private ObjectProvider<RedisConnectionFactory> redisConnectionFactoryProvider;
 
-    private final Set<TaskConstant> taskConstantSet = new LinkedHashSet<>();
+    /**
+     * 集群模式。只在配置项jack.task.cluster.mode不为none时创建
+     */
+    private DynamicTaskCluster taskCluster;
 
-    @Override
-    public void configureTasks(ScheduledTaskRegistrar registrar) {
-        this.registrar = registrar;
-        this.registrar.addTriggerTask(() -> {
-            if (CollectionUtils.isEmpty(taskConstantSet)) {
-                return;
+    @Autowired
+    private ObjectProvider<DynamicTaskStore> taskStoreProvider;
+
+    @Autowired
+    private ObjectProvider<DataSource> dataSourceProvider;
+
+    /**
+     * 持久化存储。只在配置项jack.task.store.type不为none，或者容器中存在DynamicTaskStore时创建
+     */
+    private DynamicTaskStore taskStore;
+
+    /**
+     * 持久化的定时任务是否已经加载
+     */
+    private final AtomicBoolean storeLoaded = new AtomicBoolean();
+
+    /**
+     * 定时任务的处理器。key = 处理器名称
+     */
+    private final ConcurrentHashMap<String, Consumer<String>> handlers = new ConcurrentHashMap<>();
+
+    @Autowired
+    private BeanFactory beanFactory;
+
+    /**
+     * 执行指标。配置项jack.task.metrics.enabled = false时不记录
+     */
+    private final DynamicTaskMetrics taskMetrics = new DynamicTaskMetrics(TASK_ID_PREFIX);
+
+    /**
+     * 已经调度的定时任务。key = 任务id
+     */
+    private final ConcurrentHashMap<String, ScheduledTimingTask> scheduledTasks = new ConcurrentHashMap<>();
+
+    /**
+     * cron表达式解析结果的缓存，相同的表达式只解析一次。不合法的表达式缓存为empty
+     */
+    private final ConcurrentHashMap<String, Optional<CronTrigger>> cronTriggerCache = new ConcurrentHashMap<>();
+
+    /**
+     * 定时任务注册表。key = 任务id
+     */
+    private final ConcurrentHashMap<String, TaskEntry> taskRegistry = new ConcurrentHashMap<>();
+
+    /**
+     * 注册表的版本号。定时任务每次添加、替换都会分配新的版本号
+     */
+    private final AtomicLong versionSequence = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        DynamicTaskProperties.Metrics metricsProperties = dynamicTaskProperties.getMetrics();
+        if (metricsProperties.isEnabled()
+                && ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry", getClass().getClassLoader())) {
+            this.taskMetrics.setListener(MicrometerTaskMetricsListener.create(beanFactory, metricsProperties.isPerTaskTags()));
+        }
+        this.taskExecutor = new DynamicTaskExecutor(dynamicTaskProperties.getPool(), this::getTaskScheduler, getRecordingMetrics());
+
+        if (dynamicTaskProperties.getCluster().getMode() != DynamicTaskProperties.ClusterMode.NONE) {
+            RedisConnectionFactory redisConnectionFactory = redisConnectionFactoryProvider.getIfAvailable();
+            if (redisConnectionFactory == null) {
+                throw new IllegalStateException("DynamicTask集群模式需要redis，请配置redis连接");
             }
+            this.taskCluster = new DynamicTaskCluster(dynamicTaskProperties.getCluster(), redisConnectionFactory);
+            this.taskCluster.start();
+        }
 
-            // 移除过期的cron表达式配置
-            Map<String, Long> taskIdCountingMap = taskConstantSet.stream()
-                 .collect(Collectors.groupingBy(TaskConstant::getTaskId, Collectors.counting()));
+        this.taskStore = createTaskStore();
+    }
 
-            taskIdCountingMap.forEach((taskId, counting) -> {
-                if (counting <= 1) {
-                    return;
-                }
+    /**
+     * @return  执行指标。不记录时返回null
+     */
+    private DynamicTaskMetrics getRecordingMetrics() {
+        return dynamicTaskProperties.getMetrics().isEnabled() ? taskMetrics : null;
+    }
 
-                // 同一个任务id，只保留一条cron表达式
-                Iterator<TaskConstant> it = taskConstantSet.iterator();
-                while (it.hasNext() && counting > 1) {
-                    TaskConstant taskConstant = it.next();
-                    if (taskId.equals(taskConstant.getTaskId())) {
-                        counting--;
-                        it.remove();
-                    }
+    private DynamicTaskStore createTaskStore() {
+        DynamicTaskStore customStore = taskStoreProvider.getIfAvailable();
+        if (customStore != null) {
+            return customStore;
+        }
+
+        DynamicTaskProperties.Store storeProperties = dynamicTaskProperties.getStore();
+        switch (storeProperties.getType()) {
+            case REDIS:
+                RedisConnectionFactory redisConnectionFactory = redisConnectionFactoryProvider.getIfAvailable();
+                if (redisConnectionFactory == null) {
+                    throw new IllegalStateException("DynamicTask持久化到redis，请配置redis连接");
                 }
-            });
+                return new RedisDynamicTaskStore(redisConnectionFactory, storeProperties.getKeyPrefix());
+            case JDBC:
+                DataSource dataSource = dataSourceProvider.getIfAvailable();
+                if (dataSource == null) {
+                    throw new IllegalStateException("DynamicTask持久化到数据库，请配置数据源");
+                }
+                return new JdbcDynamicTaskStore(dataSource, storeProperties.getTableName());
+            case NONE:
+            default:
+                return null;
+        }
+    }
 
-            List<TimingTask> timingTaskList = new ArrayList<>();
-            taskConstantSet.forEach(taskConstant -> {
-                TimingTask tt = new TimingTask(taskConstant.getConsumer());
-                tt.setExpression(taskConstant.getCron());
-                tt.setTaskId("dynamic-task-" + taskConstant.getTaskId());
-                tt.setRule(taskConstant.getRule());
-                timingTaskList.add(tt);
-            });
+    /**
+     * 容器启动完成后，注册容器中的处理器（{@link DynamicTaskHandler}），并加载持久化的定时任务
+     */
+    @EventListener
+    public void onContextRefreshed(ContextRefreshedEvent event) {
+        event.getApplicationContext().getBeansOfType(DynamicTaskHandler.class).forEach(handlers::putIfAbsent);
 
-            this.refreshTasks(timingTaskList);
+        if (taskStore != null && storeLoaded.compareAndSet(false, true)) {
+            loadStoredTasks();
         }
-        , triggerContext -> new PeriodicTrigger(triggerPeriod, TimeUnit.SECONDS).nextExecutionTime(triggerContext));
     }
 
-    private void refreshTasks(List<TimingTask> timingTaskList) {
-        //取消已经删除的策略任务
-        Set<String> taskIds = scheduledFutures.keySet();
-        for (String taskId : taskIds) {
-            if (!exists(timingTaskList, taskId)) {
-                log.info("移除过期配置：taskId = {}", taskId);
-                scheduledFutures.remove(taskId).cancel(false);
-                cronTasks.remove(taskId);
+    /**
+     * 并行加载各个分区中的定时任务。已经通过代码添加的同id任务以代码为准
+     */
+    private void loadStoredTasks() {
+        long start = System.currentTimeMillis();
+        DynamicTaskProperties.Store storeProperties = dynamicTaskProperties.getStore();
+        int parallelism = Math.max(1, Math.min(storeProperties.getLoadParallelism(), DynamicTaskStore.PARTITIONS));
+        ExecutorService loader = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("dynamic-task-loader-"));
+
+        List<DynamicTaskStore.TaskDefinition> definitions = new ArrayList<>();
+        try {
+            List<Future<List<DynamicTaskStore.TaskDefinition>>> futures = new ArrayList<>(DynamicTaskStore.PARTITIONS);
+            for (int i = 0; i < DynamicTaskStore.PARTITIONS; i++) {
+                int partition = i;
+                futures.add(loader.submit(() -> taskStore.load(partition)));
             }
+            for (Future<List<DynamicTaskStore.TaskDefinition>> future : futures) {
+                definitions.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("加载持久化的定时任务被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("加载持久化的定时任务失败", e.getCause());
+        } finally {
+            loader.shutdown();
         }
 
-        for (TimingTask timingTask : timingTaskList) {
-            String expression = timingTask.getExpression();
-            if (StringUtils.isBlank(expression) || !CronSequenceGenerator.isValidExpression(expression)) {
-                log.error("定时任务DynamicTask cron表达式不合法: {}", expression);
+        List<DynamicTaskStore.TaskDefinition> loaded = new ArrayList<>(definitions.size());
+        for (DynamicTaskStore.TaskDefinition definition : definitions) {
+            if (isExpiredOneShot(definition)) {
+                log.info("one-shot定时任务在重启期间错过了执行时间，按照补偿策略不再执行：taskId = {}", definition.getTaskId());
+                taskStore.delete(definition.getTaskId());
+                continue;
+            }
+            TaskConstant task = toTaskConstant(definition);
+            try {
+                this.validate(task);
+            } catch (IllegalArgumentException e) {
+                log.error("持久化的定时任务不能在当前配置下运行，不加载：taskId = {}。{}", definition.getTaskId(), e.getMessage());
                 continue;
             }
+            if (!taskRegistry.containsKey(definition.getTaskId()) && this.register(task)) {
+                loaded.add(definition);
+            }
+        }
+        loaded.forEach(definition -> this.reconcile(definition.getTaskId()));
+        log.info("===>DynamicTask加载了{}个持久化的定时任务，耗时{}ms", loaded.size(), System.currentTimeMillis() - start);
+
+        loaded.forEach(this::recoverMisfire);
+    }
+
+    /**
+     * 补偿策略为skip，并且已经过了执行时间的one-shot任务
+     */
+    private boolean isExpiredOneShot(DynamicTaskStore.TaskDefinition definition) {
+        DynamicTaskProperties.MisfirePolicy policy = definition.getMisfirePolicy() != null
+                ? definition.getMisfirePolicy()
+                : dynamicTaskProperties.getStore().getMisfirePolicy();
+        return definition.getTriggerType() == TriggerType.ONE_SHOT
+                && policy == DynamicTaskProperties.MisfirePolicy.SKIP
+                && definition.getStartTime() != null
+                && definition.getStartTime() <= System.currentTimeMillis();
+    }
+
+    /**
+     * 按照补偿策略，处理重启期间错过的触发
+     */
+    private void recoverMisfire(DynamicTaskStore.TaskDefinition definition) {
+        DynamicTaskProperties.Store storeProperties = dynamicTaskProperties.getStore();
+        DynamicTaskProperties.MisfirePolicy policy = definition.getMisfirePolicy() != null
+                ? definition.getMisfirePolicy()
+                : storeProperties.getMisfirePolicy();
+        TaskConstant taskConstant = toTaskConstant(definition);
+        DynamicTaskTrigger trigger = createTrigger(taskConstant);
+        if (policy == DynamicTaskProperties.MisfirePolicy.SKIP || definition.getLastFireTime() == null || trigger == null
+                || trigger.getType() == TriggerType.ONE_SHOT) {
+            // one-shot任务如果已经过了执行时间，调度后会立即执行
+            return;
+        }
+
+        // fire-once只需要最近一次，fire-all最多保留最近的max-misfire-runs次
+        int limit = policy == DynamicTaskProperties.MisfirePolicy.FIRE_ONCE ? 1 : Math.max(1, storeProperties.getMaxMisfireRuns());
+        long now = System.currentTimeMillis();
+        long lastFireTime = definition.getLastFireTime();
+        Long first = nextFireTime(trigger, lastFireTime);
+        if (first == null || first > now) {
+            return;
+        }
+        Long second = nextFireTime(trigger, first);
+        long period = second != null ? Math.max(1L, second - first) : 1L;
 
-            CronTask cronTask = cronTasks.get(timingTask.getTaskId());
-            if (cronTask != null
-                    && !cronTask.getExpression().equals(expression)) {
+        // 停机时间很长时（例如每秒一次的任务停机几周），不能从lastFireTime开始逐个计算错过的触发。
+        // 只计算最近一段时间（约limit + 1个周期）内的触发，不够limit次并且还没有到lastFireTime时，时间范围加倍
+        Deque<Long> misfireTimes = new ArrayDeque<>();
+        long window = (limit + 1) * period;
+        long from;
+        for (;;) {
+            from = Math.max(lastFireTime, now - window);
+            misfireTimes.clear();
+            for (Long next = nextFireTime(trigger, from); next != null && next <= now; next = nextFireTime(trigger, next)) {
+                misfireTimes.addLast(next);
+                if (misfireTimes.size() > limit) {
+                    misfireTimes.removeFirst();
+                }
+            }
+            if (misfireTimes.size() >= limit || from == lastFireTime || window > now - lastFireTime) {
+                break;
+            }
+            window *= 2;
+        }
+        if (misfireTimes.isEmpty()) {
+            return;
+        }
+
+        // 没有从lastFireTime开始计算时，错过的次数按周期估算，只用于日志
+        long misfireCount = from == lastFireTime && misfireTimes.size() < limit
+                ? misfireTimes.size()
+                : Math.max(misfireTimes.size(), (now - lastFireTime) / period);
+        log.info("定时任务在重启期间错过了约{}次触发，按照{}补偿执行{}次：taskId = {}",
+                misfireCount, policy, misfireTimes.size(), definition.getTaskId());
+        TimingTask tt = newTimingTask(definition.getTaskId(), taskConstant);
+        // 使用错过的计划执行时间，集群模式下各个节点的补偿执行也只有一个节点执行
+        misfireTimes.forEach(tt::fire);
+    }
+
+    /**
+     * @param previous  上一次的计划执行时间
+     * @return  之后的下一次触发时间，没有时返回null
+     */
+    private static Long nextFireTime(DynamicTaskTrigger trigger, long previous) {
+        Date previousDate = new Date(previous);
+        Date next = trigger.nextExecutionTime(new SimpleTriggerContext(previousDate, previousDate, previousDate));
+        return next != null ? next.getTime() : null;
+    }
+
+    /**
+     * 定时任务的添加、删除会立即生效（参考{@link #addTask(TaskConstant)}、{@link #deleteTask(String)}）。
+     * <p></p>
+     * 这里只注册一个校对任务：调度器就绪后执行一次全量校对，创建在此之前添加的定时任务；
+     * 如果配置了<b><i>jack.task.reconcile-period</i></b>，之后按周期进行全量校对作为兜底。
+     */
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        if (dynamicTaskProperties.getSchedulerType() == DynamicTaskProperties.SchedulerType.HASHED_WHEEL) {
+            log.info("===>DynamicTask使用时间轮调度器。tick = {}ms，wheelSize = {}",
+                    dynamicTaskProperties.getWheelTickMillis(), dynamicTaskProperties.getWheelSize());
+            this.wheelTaskScheduler = new HashedWheelTaskScheduler(dynamicTaskProperties.getWheelTickMillis(),
+                    dynamicTaskProperties.getWheelSize());
+        }
+
+        this.registrar = registrar;
+        this.registrar.addTriggerTask(this::reconcileAll, triggerContext -> {
+            if (triggerContext.lastCompletionTime() == null) {
+                return new Date();
+            }
+
+            long reconcilePeriod = dynamicTaskProperties.getReconcilePeriod();
+            if (reconcilePeriod <= 0) {
+                return null;
+            }
+
+            return new PeriodicTrigger(reconcilePeriod, TimeUnit.SECONDS).nextExecutionTime(triggerContext);
+        });
+    }
+
+    /**
+     * 全量校对：取消已经删除的定时任务，创建或更新其余的定时任务
+     */
+    private void reconcileAll() {
+        Set<String> taskIds = new HashSet<>(taskRegistry.keySet());
+        taskIds.addAll(scheduledTasks.keySet());
+        taskIds.forEach(this::reconcile);
+    }
+
+    /**
+     * 增量校对：只处理指定的定时任务，使已经调度的任务与注册表中的版本保持一致。
+     * <p></p>
+     * 同一个任务id的校对是串行的，并且总是以注册表中最新的版本为准，所以并发地添加、删除同一个任务不会出现错乱。
+     * @param taskId    任务id
+     */
+    private void reconcile(String taskId) {
+        TaskScheduler scheduler = getTaskScheduler();
+        if (scheduler == null) {
+            // 调度器尚未就绪，由首次全量校对统一创建
+            return;
+        }
+
+        scheduledTasks.compute(taskId, (id, scheduled) -> {
+            TaskEntry entry = taskRegistry.get(id);
+            if (entry == null) {
+                if (scheduled != null) {
+                    log.info("移除过期配置：taskId = {}", scheduled.getTimingTask().getTaskId());
+                    scheduled.cancel();
+                }
+                taskMetrics.remove(TASK_ID_PREFIX + id);
+                return null;
+            }
+
+            if (scheduled != null && scheduled.getVersion() == entry.getVersion()) {
+                return scheduled;
+            }
+
+            TaskConstant taskConstant = entry.getTask();
+            DynamicTaskTrigger trigger = createTrigger(taskConstant);
+            if (trigger == null) {
+                log.error("定时任务DynamicTask cron表达式不合法: {}", taskConstant.getCron());
+                return scheduled;
+            }
+
+            if (scheduled != null) {
                 //如果策略执行时间发生了变化，则取消当前策略的任务
-                scheduledFutures.remove(timingTask.getTaskId()).cancel(false);
-                log.info("移除的配置：{}。cron = {}", timingTask.getRule(), cronTask.getExpression());
-                cronTasks.remove(timingTask.getTaskId());
+                scheduled.cancel();
+                log.info("移除的配置：{}。{}", scheduled.getTimingTask().getRule(), scheduled.getTimingTask().getExpression());
             }
 
-            //如果配置一致，则不需要重新创建定时任务
-            if (Objects.isNull(cronTasks.get(timingTask.getTaskId()))) {
-                log.info("增加的配置：{}。cron = {}", timingTask.getRule(), timingTask.getExpression());
-                CronTask task = new CronTask(timingTask, expression);
-                ScheduledFuture<?> future = Objects.requireNonNull(registrar.getScheduler()).schedule(task.getRunnable(), task.getTrigger());
-                cronTasks.put(timingTask.getTaskId(), task);
-                assert future != null;
-                scheduledFutures.put(timingTask.getTaskId(), future);
+            TimingTask tt = newTimingTask(id, taskConstant);
+            tt.setExpression(trigger.toString());
+            if (trigger.getType() == TriggerType.ONE_SHOT) {
+                tt.setOnFinished(() -> finishOneShot(id, entry));
+            }
+            log.info("增加的配置：{}。{}", tt.getRule(), tt.getExpression());
+            Trigger scheduleTrigger = trigger;
+            if (trigger.getType() == TriggerType.FIXED_DELAY) {
+                // fixed-delay只由调度器触发第一次，之后在每次执行完成后再安排下一次
+                tt.setScheduler(scheduler);
+                tt.setDelayTrigger(trigger);
+                scheduleTrigger = triggerContext -> triggerContext.lastScheduledExecutionTime() == null
+                        ? trigger.nextExecutionTime(triggerContext)
+                        : null;
             }
+            return new ScheduledTimingTask(tt, scheduler.schedule(tt, tt.recording(scheduleTrigger)), entry.getVersion());
+        });
+    }
+
+    private TimingTask newTimingTask(String id, TaskConstant taskConstant) {
+        Consumer<String> consumer = taskConstant.getConsumer() != null
+                ? taskConstant.getConsumer()
+                : handlerConsumer(taskConstant.getHandler());
+        TimingTask tt = new TimingTask(consumer, taskExecutor, taskCluster);
+        tt.setMetrics(getRecordingMetrics());
+        tt.setOverlapGuard(OverlapGuard.of(
+                taskConstant.getOverlapPolicy() != null ? taskConstant.getOverlapPolicy() : dynamicTaskProperties.getOverlapPolicy(),
+                taskConstant.getMaxConcurrentRuns() != null ? taskConstant.getMaxConcurrentRuns() : dynamicTaskProperties.getMaxConcurrentRuns()));
+        tt.setTaskId(TASK_ID_PREFIX + id);
+        tt.setOnCancelledRun(() -> removeMetricsIfDeleted(id));
+        tt.setRule(taskConstant.getRule());
+        tt.setGroup(taskConstant.getGroup());
+        if (isPersistent(taskConstant)) {
+            tt.setStore(taskStore);
+        }
+        return tt;
+    }
+
+    /**
+     * 创建触发器
+     * @return  cron表达式不合法时返回null
+     */
+    private DynamicTaskTrigger createTrigger(TaskConstant task) {
+        switch (task.getTriggerType()) {
+            case FIXED_RATE:
+                return DynamicTaskTrigger.fixedRate(task.getPeriodMillis(), task.getInitialDelayMillis(), task.getStartTime(),
+                        task.getJitterMillis(), task.getTaskId());
+            case FIXED_DELAY:
+                return DynamicTaskTrigger.fixedDelay(task.getPeriodMillis(), task.getInitialDelayMillis(), task.getStartTime(),
+                        task.getJitterMillis(), task.getTaskId());
+            case ONE_SHOT:
+                return DynamicTaskTrigger.oneShot(task.getStartTime(), task.getJitterMillis(), task.getTaskId());
+            case CRON:
+            default:
+                CronTrigger cronTrigger = getCronTrigger(task.getCron());
+                return cronTrigger == null ? null : DynamicTaskTrigger.cron(cronTrigger, task.getJitterMillis(), task.getTaskId());
+        }
+    }
+
+    /**
+     * one-shot任务唯一的一次执行完成（或者被丢弃、由其他节点执行）后，从注册表（以及持久化存储）中移除，同时移除执行指标。
+     * 如果期间任务已经被替换，则不做处理。
+     * <p></p>
+     * 由执行线程回调，不能在触发器中调用：触发器运行时调度器持有任务的锁，而校对时取消任务也需要这把锁，会造成死锁
+     */
+    private void finishOneShot(String id, TaskEntry entry) {
+        if (!taskRegistry.remove(id, entry)) {
+            return;
+        }
+
+        if (isPersistent(entry.getTask())) {
+            try {
+                taskStore.delete(id);
+            } catch (Exception e) {
+                log.warn("删除已经执行的one-shot定时任务失败：taskId = {}", id, e);
+            }
+        }
+        this.reconcile(id);
+    }
+
+    /**
+     * 定时任务删除时正在执行的那一次，结束时会重新创建执行指标，需要再移除一次
+     */
+    private void removeMetricsIfDeleted(String id) {
+        if (!taskRegistry.containsKey(id)) {
+            taskMetrics.remove(TASK_ID_PREFIX + id);
         }
     }
 
-    private boolean exists(List<TimingTask> tasks, String taskId) {
-        for (TimingTask task : tasks) {
-            if (task.getTaskId().equals(taskId)) {
-                return true;
+    /**
+     * 每次执行时才按名称查找处理器，处理器可以在定时任务之后注册
+     */
+    private Consumer<String> handlerConsumer(String handlerName) {
+        return taskId -> {
+            Consumer<String> handler = handlers.get(handlerName);
+            if (handler == null) {
+                throw new IllegalStateException("没有找到定时任务的处理器：" + handlerName);
+            }
+            handler.accept(taskId);
+        };
+    }
+
+    private boolean isPersistent(TaskConstant task) {
+        return taskStore != null && task.getHandler() != null;
+    }
+
+    private static DynamicTaskStore.TaskDefinition toDefinition(TaskConstant task) {
+        DynamicTaskStore.TaskDefinition definition = new DynamicTaskStore.TaskDefinition();
+        definition.setTaskId(task.getTaskId());
+        definition.setTriggerType(task.getTriggerType());
+        definition.setCron(task.getCron());
+        definition.setPeriodMillis(task.getPeriodMillis());
+        definition.setInitialDelayMillis(task.getInitialDelayMillis());
+        definition.setStartTime(task.getStartTime());
+        definition.setJitterMillis(task.getJitterMillis());
+        definition.setRule(task.getRule());
+        definition.setGroup(task.getGroup());
+        definition.setHandler(task.getHandler());
+        definition.setMisfirePolicy(task.getMisfirePolicy());
+        definition.setOverlapPolicy(task.getOverlapPolicy());
+        definition.setMaxConcurrentRuns(task.getMaxConcurrentRuns());
+        return definition;
+    }
+
+    private static TaskConstant toTaskConstant(DynamicTaskStore.TaskDefinition definition) {
+        TaskConstant task = new TaskConstant(definition.getHandler());
+        task.setTaskId(definition.getTaskId());
+        if (definition.getTriggerType() != null) {
+            task.setTriggerType(definition.getTriggerType());
+        }
+        task.setCron(definition.getCron());
+        task.setPeriodMillis(definition.getPeriodMillis());
+        task.setInitialDelayMillis(definition.getInitialDelayMillis());
+        task.setStartTime(definition.getStartTime());
+        task.setJitterMillis(definition.getJitterMillis());
+        task.setRule(definition.getRule());
+        task.setGroup(definition.getGroup());
+        task.setMisfirePolicy(definition.getMisfirePolicy());
+        task.setOverlapPolicy(definition.getOverlapPolicy());
+        task.setMaxConcurrentRuns(definition.getMaxConcurrentRuns());
+        return task;
+    }
+
+    /**
+     * 校验定时任务的配置，并把one-shot的执行时间转换为绝对时间。需要在持久化、放入注册表之前调用。
+     * <p></p>
+     * 集群模式下，租约以计划执行时间区分每一次触发，所以计划执行时间在各个节点上必须相同：
+     * fixed-delay从每个节点自己的执行完成时间开始计算，只能用于sharding模式（只有负责该任务的节点会执行）；
+     * one-shot必须指定startTime，不能由各个节点按添加时间 + initialDelayMillis计算
+     * @param task  定时任务
+     */
+    private void validate(TaskConstant task) {
+        Assert.notNull(task, "task can not be null");
+        Assert.notNull(task.getTaskId(), "taskId can not be null");
+        Assert.notNull(task.getTriggerType(), "triggerType can not be null");
+        switch (task.getTriggerType()) {
+            case FIXED_RATE:
+            case FIXED_DELAY:
+                Assert.isTrue(task.getPeriodMillis() > 0, "periodMillis must be greater than 0");
+                Assert.isTrue(task.getJitterMillis() < task.getPeriodMillis(), "jitterMillis must be less than periodMillis");
+                Assert.isTrue(task.getTriggerType() != TriggerType.FIXED_DELAY
+                                || dynamicTaskProperties.getCluster().getMode() != DynamicTaskProperties.ClusterMode.LEASE,
+                        "fixed-delay task is not supported in lease cluster mode, use sharding instead");
+                break;
+            case ONE_SHOT:
+                Assert.isTrue(taskCluster == null || task.getStartTime() != null,
+                        "one-shot task requires startTime in cluster mode");
+                if (task.getStartTime() == null) {
+                    // 转换为绝对时间，重新调度（例如重启）时不会再次延迟
+                    task.setStartTime(System.currentTimeMillis() + task.getInitialDelayMillis());
+                }
+                break;
+            default:
+        }
+    }
+
+    /**
+     * 注册表中是否已经存在相同的配置（参考{@link TaskConstant#equals(Object)}）
+     */
+    private boolean isRegistered(TaskConstant task) {
+        TaskEntry existing = taskRegistry.get(task.getTaskId());
+        return existing != null && existing.getTask().equals(task);
+    }
+
+    /**
+     * 将定时任务放入注册表。如果注册表中已经存在相同的配置（参考{@link TaskConstant#equals(Object)}），则不做处理
+     * @param task  已经校验过的定时任务（参考{@link #validate(TaskConstant)}）
+     * @return  true：新增或替换了注册表中的任务，false：配置没有变化
+     */
+    private boolean register(TaskConstant task) {
+        long version = versionSequence.incrementAndGet();
+        TaskEntry entry = taskRegistry.compute(task.getTaskId(), (taskId, existing) -> {
+            if (existing != null && existing.getTask().equals(task)) {
+                return existing;
             }
+            return new TaskEntry(task, version);
+        });
+        return entry.getVersion() == version;
+    }
+
+    private TaskScheduler getTaskScheduler() {
+        if (registrar == null) {
+            return null;
         }
-        return false;
+
+        return wheelTaskScheduler != null ? wheelTaskScheduler : registrar.getScheduler();
+    }
+
+    private CronTrigger getCronTrigger(String expression) {
+        if (StringUtils.isBlank(expression)) {
+            return null;
+        }
+
+        return cronTriggerCache.computeIfAbsent(expression, exp -> CronExpression.isValidExpression(exp)
+                ? Optional.of(new CronTrigger(exp))
+                : Optional.empty())
+                .orElse(null);
     }
 
     @PreDestroy
     public void destroy() {
-        this.registrar.destroy();
+        scheduledTasks.values().forEach(ScheduledTimingTask::cancel);
+        scheduledTasks.clear();
+        if (this.registrar != null) {
+            this.registrar.destroy();
+        }
+        if (this.wheelTaskScheduler != null) {
+            this.wheelTaskScheduler.destroy();
+        }
+        this.taskExecutor.shutdown(dynamicTaskProperties.getPool().getAwaitTerminationSeconds());
+        if (this.taskCluster != null) {
+            this.taskCluster.stop();
+        }
     }
 
     @Data
     public static class TaskConstant {
         /**
-         * cron表达式
+         * 触发方式。默认：cron
+         */
+        private TriggerType triggerType = TriggerType.CRON;
+        /**
+         * cron表达式，只在triggerType = cron时有效
          */
         private String cron;
+        /**
+         * 触发周期，单位：毫秒。只在triggerType = fixed-rate、fixed-delay时有效
+         */
+        private long periodMillis;
+        /**
+         * 首次触发的延迟时间，单位：毫秒。只在triggerType = fixed-rate、fixed-delay、one-shot时有效
+         */
+        private long initialDelayMillis;
+        /**
+         * 首次触发的时间，毫秒时间戳。triggerType = one-shot时为执行时间，为null时等于添加时间 + initialDelayMillis（集群模式下必须指定）；
+         * triggerType = fixed-rate时为周期的起点，为null时按照周期对齐到整点
+         */
+        private Long startTime;
+        /**
+         * 随机抖动的最大值，单位：毫秒。每次触发延后[0, jitterMillis]毫秒，fixed-rate、fixed-delay需要小于periodMillis。默认：0
+         */
+        private long jitterMillis;
         /**
          * 任务id，如果id相同，重复添加时则删除之前添加的。
          */
@@ -181,16 +711,44 @@ public class DynamicTask implements SchedulingConfigurer {
          * 定时任务的描述信息
          */
         private String rule;
+        /**
+         * 分组，用于限制同一组定时任务的并发数量（参考配置项jack.task.pool.group-concurrency）。为null时属于default分组
+         */
+        private String group;
         /**
          * 消费者回调。定时任务执行时要处理的业务逻辑
          */
         private Consumer<String> consumer;
+        /**
+         * 处理器名称（参考{@link DynamicTaskHandler}）。与consumer二选一，配置了持久化存储时会被保存
+         */
+        private String handler;
+        /**
+         * 重启期间错过的触发的补偿策略，只对持久化的定时任务有效。为null时使用配置项jack.task.store.misfire-policy
+         */
+        private DynamicTaskProperties.MisfirePolicy misfirePolicy;
+        /**
+         * 上一次执行还没有完成时，如何处理新的触发。为null时使用配置项jack.task.overlap-policy
+         */
+        private DynamicTaskProperties.OverlapPolicy overlapPolicy;
+        /**
+         * 同时执行的最大数量，只在overlapPolicy = concurrent时有效。为null时使用配置项jack.task.max-concurrent-runs
+         */
+        private Integer maxConcurrentRuns;
 
         public TaskConstant(Consumer<String> consumer) {
             Assert.notNull(consumer, "请提供消费者回调");
             this.consumer = consumer;
         }
 
+        /**
+         * @param handler   处理器名称，定时任务执行时按名称查找处理器
+         */
+        public TaskConstant(String handler) {
+            Assert.hasText(handler, "请提供处理器名称");
+            this.handler = handler;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -198,7 +756,17 @@ public class DynamicTask implements SchedulingConfigurer {
 
             TaskConstant that = (TaskConstant) o;
 
+            if (triggerType != that.triggerType) return false;
+            if (periodMillis != that.periodMillis) return false;
+            if (initialDelayMillis != that.initialDelayMillis) return false;
+            if (jitterMillis != that.jitterMillis) return false;
+            if (startTime != null ? !startTime.equals(that.startTime) : that.startTime != null) return false;
             if (cron != null ? !cron.equals(that.cron) : that.cron != null) return false;
+            if (group != null ? !group.equals(that.group) : that.group != null) return false;
+            if (handler != null ? !handler.equals(that.handler) : that.handler != null) return false;
+            if (misfirePolicy != that.misfirePolicy) return false;
+            if (overlapPolicy != that.overlapPolicy) return false;
+            if (maxConcurrentRuns != null ? !maxConcurrentRuns.equals(that.maxConcurrentRuns) : that.maxConcurrentRuns != null) return false;
             return taskId != null ? taskId.equals(that.taskId) : that.taskId == null;
         }
 
@@ -206,61 +774,392 @@ public class DynamicTask implements SchedulingConfigurer {
         public int hashCode() {
             int result = cron != null ? cron.hashCode() : 0;
             result = 31 * result + (taskId != null ? taskId.hashCode() : 0);
+            result = 31 * result + (group != null ? group.hashCode() : 0);
+            result = 31 * result + (triggerType != null ? triggerType.hashCode() : 0);
+            result = 31 * result + Long.hashCode(periodMillis);
+            result = 31 * result + Long.hashCode(initialDelayMillis);
+            result = 31 * result + (startTime != null ? startTime.hashCode() : 0);
+            result = 31 * result + Long.hashCode(jitterMillis);
+            result = 31 * result + (handler != null ? handler.hashCode() : 0);
+            result = 31 * result + (misfirePolicy != null ? misfirePolicy.hashCode() : 0);
+            result = 31 * result + (overlapPolicy != null ? overlapPolicy.hashCode() : 0);
+            result = 31 * result + (maxConcurrentRuns != null ? maxConcurrentRuns.hashCode() : 0);
             return result;
         }
     }
 
+    public enum TriggerType {
+        /**
+         * 按照cron表达式触发
+         */
+        CRON,
+        /**
+         * 按照固定的频率触发，与上一次的执行时间无关
+         */
+        FIXED_RATE,
+        /**
+         * 上一次执行完成后，间隔固定的时间再触发
+         */
+        FIXED_DELAY,
+        /**
+         * 只触发一次，触发后自动删除
+         */
+        ONE_SHOT
+    }
+
     @Data
     @ToString
     private static class TimingTask implements Runnable {
-        private String expression;  // cron表达式
+        private String expression;  // 触发规则，例如cron表达式
         private String taskId;  // 任务id，如果id相同，重复添加时则删除之前添加的。
         private String rule;    // 定时任务的描述信息
+        private String group;   // 分组
         private Consumer<String> consumer;  // 定时任务执行时要处理的业务逻辑，相当于回调
+        @ToString.Exclude
+        private DynamicTaskExecutor executor;   // 执行定时任务的线程池
+        @ToString.Exclude
+        private DynamicTaskCluster cluster; // 集群模式，为null时表示不开启
+        @ToString.Exclude
+        private DynamicTaskStore store; // 持久化存储，为null时表示不持久化
+        @ToString.Exclude
+        private DynamicTaskMetrics metrics; // 执行指标，为null时不记录
+        @ToString.Exclude
+        private OverlapGuard overlapGuard;  // 控制重叠执行，为null时不限制
+        @ToString.Exclude
+        private Runnable onFinished;    // 唯一的一次执行结束后回调，只用于one-shot
+        @ToString.Exclude
+        private Runnable onCancelledRun;    // 任务取消后，仍在执行的那一次结束时回调
+        @ToString.Exclude
+        private TaskScheduler scheduler;    // 安排fixed-delay的下一次执行
+        @ToString.Exclude
+        private Trigger delayTrigger;   // fixed-delay的触发器，为null时表示不是fixed-delay
+        @ToString.Exclude
+        private volatile ScheduledFuture<?> delayFuture;    // fixed-delay的下一次执行
+        private volatile boolean cancelled;
+        private volatile long scheduledTime;    // 本次触发的计划执行时间
 
-        TimingTask(Consumer<String> consumer) {
+        TimingTask(Consumer<String> consumer, DynamicTaskExecutor executor, DynamicTaskCluster cluster) {
             this.consumer = consumer;
+            this.executor = executor;
+            this.cluster = cluster;
+        }
+
+        /**
+         * 包装触发器，记录每次触发的计划执行时间。运行时调度器持有任务的锁，这里不能有其他的副作用
+         */
+        Trigger recording(Trigger trigger) {
+            return triggerContext -> {
+                Date nextExecutionTime = trigger.nextExecutionTime(triggerContext);
+                if (nextExecutionTime != null) {
+                    this.scheduledTime = nextExecutionTime.getTime();
+                }
+                return nextExecutionTime;
+            };
         }
 
         @Override
         public void run() {
+            long scheduledTime = this.scheduledTime;
+            if (metrics != null) {
+                metrics.recordLag(taskId, group, TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - scheduledTime));
+            }
+            fire(scheduledTime);
+        }
 
-            es.submit(() -> {
-                //这里写业务方法
-                log.info("执行定时任务:{},执行时间：{}，{} ", this.getTaskId(), LocalDateTime.now().toLocalTime(), this.getRule());
-                consumer.accept(taskId);
+        /**
+         * 提交一次执行
+         * @param scheduledTime 本次触发的计划执行时间
+         */
+        void fire(long scheduledTime) {
+            if (delayTrigger != null) {
+                // fixed-delay本身就是串行的，不需要控制重叠执行
+                if (cluster != null && !cluster.isOwner(taskId)) {
+                    scheduleNextDelay(scheduledTime);
+                } else {
+                    executor.execute(group, taskId, () -> execute(scheduledTime), () -> scheduleNextDelay(scheduledTime));
+                }
+                return;
+            }
+
+            if (cluster != null && !cluster.isOwner(taskId)) {
+                finished();
+                return;
+            }
+
+            if (overlapGuard == null) {
+                executor.execute(group, taskId, () -> execute(scheduledTime), onFinished);
+                return;
+            }
+
+            if (!overlapGuard.tryAcquire(scheduledTime)) {
+                log.debug("定时任务的上一次执行还没有完成，跳过或合并本次触发：taskId = {}", taskId);
+                if (metrics != null) {
+                    metrics.recordSkip(taskId, group);
+                }
+                finished();
+                return;
+            }
+            submitGuarded(scheduledTime);
+        }
+
+        /**
+         * one-shot任务的执行已经结束，不再有执行会记录指标
+         */
+        private void finished() {
+            Runnable onFinished = this.onFinished;
+            if (onFinished != null) {
+                onFinished.run();
+            }
+        }
+
+        /**
+         * 上一次执行完成（或者被丢弃）后，安排fixed-delay的下一次执行
+         */
+        private void scheduleNextDelay(long lastScheduledTime) {
+            if (cancelled) {
+                return;
+            }
+
+            Date lastScheduled = new Date(lastScheduledTime);
+            Date next = delayTrigger.nextExecutionTime(new SimpleTriggerContext(lastScheduled, lastScheduled, new Date()));
+            if (next == null) {
+                return;
+            }
+
+            this.scheduledTime = next.getTime();
+            try {
+                this.delayFuture = scheduler.schedule(this, next);
+            } catch (RejectedExecutionException e) {
+                log.warn("调度器已关闭，停止定时任务：taskId = {}", taskId);
+                return;
+            }
+            if (cancelled) {
+                // 与cancel()并发时，保证新安排的执行也被取消
+                this.delayFuture.cancel(false);
+            }
+        }
+
+        void cancel() {
+            this.cancelled = true;
+            ScheduledFuture<?> delayFuture = this.delayFuture;
+            if (delayFuture != null) {
+                delayFuture.cancel(false);
+            }
+        }
+
+        /**
+         * 提交已经占用了名额的执行，完成后释放名额；如果有排队的触发，接着提交
+         */
+        private void submitGuarded(long scheduledTime) {
+            executor.execute(group, taskId, () -> execute(scheduledTime), () -> {
+                long pendingScheduledTime = overlapGuard.release();
+                if (pendingScheduledTime != OverlapGuard.NO_PENDING) {
+                    submitGuarded(pendingScheduledTime);
+                } else {
+                    finished();
+                }
             });
+        }
 
+        private void execute(long scheduledTime) {
+            if (cluster != null) {
+                cluster.execute(taskId, scheduledTime, () -> doRun(scheduledTime));
+            } else {
+                doRun(scheduledTime);
+            }
+        }
+
+        private void doRun(long scheduledTime) {
+            //这里写业务方法
+            log.info("执行定时任务:{},执行时间：{}，{} ", this.getTaskId(), LocalDateTime.now().toLocalTime(), this.getRule());
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                consumer.accept(taskId);
+                success = true;
+            } finally {
+                if (metrics != null) {
+                    metrics.recordExecution(taskId, group, System.nanoTime() - start, success);
+                    if (cancelled && onCancelledRun != null) {
+                        onCancelledRun.run();
+                    }
+                }
+                if (store != null) {
+                    recordFireTime(scheduledTime);
+                }
+            }
+        }
+
+        private void recordFireTime(long scheduledTime) {
+            try {
+                store.updateLastFireTime(taskId.substring(TASK_ID_PREFIX.length()), scheduledTime);
+            } catch (Exception e) {
+                log.warn("更新定时任务的最后触发时间失败：taskId = {}", taskId, e);
+            }
+        }
+    }
+
+
+    @Data
+    @AllArgsConstructor
+    private static class TaskEntry {
+        private TaskConstant task;
+        private long version;   // 注册表的版本号
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class ScheduledTimingTask {
+        private TimingTask timingTask;
+        private ScheduledFuture<?> future;
+        private long version;   // 已经生效的注册表版本号
+
+        void cancel() {
+            timingTask.cancel();
+            future.cancel(false);
         }
     }
 
+    /**
+     * 获取定时任务的执行指标（参考{@link DynamicTaskMetrics}），只读
+     * @return  执行指标。配置项jack.task.metrics.enabled = false时没有数据
+     */
+    public DynamicTaskMetrics getMetrics() {
+        return taskMetrics;
+    }
 
     /**
-     * 添加定时任务
+     * 注册定时任务的处理器。容器中的{@link DynamicTaskHandler}会以bean名称自动注册，不需要手动调用
+     * @param name      处理器名称
+     * @param handler   定时任务执行时要处理的业务逻辑
+     */
+    public void registerHandler(String name, Consumer<String> handler) {
+        Assert.hasText(name, "name can not be empty");
+        Assert.notNull(handler, "handler can not be null");
+        this.handlers.put(name, handler);
+    }
+
+    /**
+     * 添加定时任务。立即生效，如果任务id已经存在，则替换之前添加的任务
+     * <p></p>
+     * 需要持久化的定时任务先保存再放入注册表，保存失败时抛出异常，注册表不受影响，可以直接重试
      * @param task  定时任务
      * @return  true：添加成功，false：失败。(as specified by {@link Collection#add(Object)})
      */
     public boolean addTask(TaskConstant task) {
-        return this.taskConstantSet.add(task);
+        this.validate(task);
+        if (isRegistered(task)) {
+            return false;
+        }
+
+        if (isPersistent(task)) {
+            taskStore.save(toDefinition(task));
+        }
+        if (!this.register(task)) {
+            return false;
+        }
+        this.reconcile(task.getTaskId());
+        return true;
+    }
+
+    /**
+     * 校验定时任务，并保存其中需要持久化的任务
+     * @return  与注册表中的配置不同的定时任务
+     */
+    private List<TaskConstant> saveChanged(Collection<TaskConstant> tasks) {
+        List<TaskConstant> changedTasks = new ArrayList<>();
+        List<DynamicTaskStore.TaskDefinition> changedDefinitions = new ArrayList<>();
+        for (TaskConstant task : tasks) {
+            this.validate(task);
+            if (isRegistered(task)) {
+                continue;
+            }
+            changedTasks.add(task);
+            if (isPersistent(task)) {
+                changedDefinitions.add(toDefinition(task));
+            }
+        }
+
+        if (!changedDefinitions.isEmpty()) {
+            taskStore.saveAll(changedDefinitions);
+        }
+        return changedTasks;
+    }
+
+    /**
+     * 批量添加定时任务。用于一次性添加大量的定时任务，例如从数据库中加载
+     * @param tasks 定时任务
+     * @return  新增或者发生了变化的定时任务数量
+     */
+    public int addTasks(Collection<TaskConstant> tasks) {
+        Assert.notNull(tasks, "tasks can not be null");
+
+        List<String> changedTaskIds = new ArrayList<>();
+        for (TaskConstant task : saveChanged(tasks)) {
+            if (this.register(task)) {
+                changedTaskIds.add(task.getTaskId());
+            }
+        }
+        changedTaskIds.forEach(this::reconcile);
+        return changedTaskIds.size();
+    }
+
+    /**
+     * 使用给定的定时任务替换全部的定时任务：新增或更新给定的任务，删除不在其中的任务。用于与数据库中的任务进行同步
+     * @param tasks 定时任务
+     * @return  新增、更新或者删除的定时任务数量
+     */
+    public int replaceAll(Collection<TaskConstant> tasks) {
+        Assert.notNull(tasks, "tasks can not be null");
+
+        Set<String> retainTaskIds = new HashSet<>();
+        tasks.forEach(task -> retainTaskIds.add(task.getTaskId()));
+        List<String> changedTaskIds = new ArrayList<>();
+        for (TaskConstant task : saveChanged(tasks)) {
+            if (this.register(task)) {
+                changedTaskIds.add(task.getTaskId());
+            }
+        }
+
+        try {
+            for (String taskId : taskRegistry.keySet()) {
+                if (retainTaskIds.contains(taskId)) {
+                    continue;
+                }
+                TaskEntry removed = taskRegistry.remove(taskId);
+                if (removed != null) {
+                    changedTaskIds.add(taskId);
+                    if (isPersistent(removed.getTask())) {
+                        taskStore.delete(taskId);
+                    }
+                }
+            }
+        } finally {
+            // 删除持久化的任务失败时，已经从注册表中移除的任务仍然要取消调度
+            changedTaskIds.forEach(this::reconcile);
+        }
+        return changedTaskIds.size();
     }
 
     /**
      * 删除定时任务
      * @param taskId    定时任务id
-     * @return  true：删除成功，false：删除失败
      */
     public void deleteTask(String taskId) {
         Assert.notNull(taskId, "taskId can not be null");
 
-        List<TaskConstant> targetList = this.taskConstantSet.stream()
-                .filter(item -> taskId.equals(item.getTaskId()))
-                .collect(Collectors.toList());
-
-        if (CollectionUtils.isEmpty(targetList)) {
+        TaskEntry removed = this.taskRegistry.remove(taskId);
+        if (removed == null) {
            log.info("没有对应id的定时任务。taskId = {}", taskId);
            return;
         }
 
-        this.taskConstantSet.removeAll(targetList);
+        try {
+            if (isPersistent(removed.getTask())) {
+                taskStore.delete(taskId);
+            }
+        } finally {
+            this.reconcile(taskId);
+        }
     }
 }
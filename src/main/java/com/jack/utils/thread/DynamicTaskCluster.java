@@ -0,0 +1,165 @@
+package com.jack.utils.thread;
+
+import com.jack.utils.config.DynamicTaskProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DynamicTask}的集群模式。多个节点部署同一个应用时，保证每次触发只有一个节点执行。
+ * <p></p>
+ * <b><i>lease</i></b>：每次触发时，各个节点通过redis抢占本次触发的租约（SET NX PX），只有抢到的节点执行，
+ * 同时获得一个单调递增的fencing token（参考{@link #currentFencingToken()}）。
+ * <p></p>
+ * <b><i>sharding</i></b>：在lease的基础上，各个节点通过心跳在redis中登记自己，按一致性哈希把定时任务分配给存活的节点，
+ * 只有负责该任务的节点才会去抢占租约，从而把负载均匀地分摊到各个节点。节点加入或离开时自动重新分配。
+ * <p></p>
+ * 租约以任务id + 计划执行时间区分每一次触发，要求同一次触发在各个节点上的计划执行时间相同。cron、fixed-rate满足这个要求；
+ * fixed-delay从每个节点自己的执行完成时间开始计算，只支持sharding模式，由负责该任务的节点执行（节点变化期间可能重复执行一次）；
+ * one-shot必须指定执行时间（startTime），不能使用各个节点按添加时间计算的延迟。
+ */
+@Slf4j
+public class DynamicTaskCluster {
+
+    /**
+     * 抢占租约成功时，递增并返回fencing token；失败时返回0
+     */
+    private static final RedisScript<Long> LEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then "
+                    + "return redis.call('incr', KEYS[2]) "
+                    + "end "
+                    + "return 0",
+            Long.class);
+
+    private static final ThreadLocal<Long> FENCING_TOKEN = new ThreadLocal<>();
+
+    private final DynamicTaskProperties.Cluster clusterProperties;
+    private final StringRedisTemplate redisTemplate;
+    private final String nodeId;
+    private final String nodesKey;
+
+    private ScheduledExecutorService heartbeatExecutor;
+    private volatile List<String> liveNodes = Collections.emptyList();
+    private volatile ConsistentHashRing ring;
+
+    DynamicTaskCluster(DynamicTaskProperties.Cluster clusterProperties, RedisConnectionFactory redisConnectionFactory) {
+        this.clusterProperties = clusterProperties;
+        this.redisTemplate = new StringRedisTemplate(redisConnectionFactory);
+        this.nodeId = StringUtils.isNotBlank(clusterProperties.getNodeId())
+                ? clusterProperties.getNodeId()
+                : ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+        this.nodesKey = clusterProperties.getKeyPrefix() + "nodes";
+        this.ring = new ConsistentHashRing(Collections.singletonList(nodeId));
+    }
+
+    /**
+     * 获取当前线程正在执行的定时任务的fencing token。
+     * <p></p>
+     * 同一个定时任务的fencing token单调递增。如果业务逻辑会写入外部存储，可以携带此token，
+     * 由存储端拒绝token更小的写入，避免租约过期后旧的执行覆盖新的结果。
+     * @return  fencing token。非集群模式或者不在定时任务的执行线程中时，返回null
+     */
+    public static Long currentFencingToken() {
+        return FENCING_TOKEN.get();
+    }
+
+    /**
+     * 启动心跳。只有sharding模式需要
+     */
+    void start() {
+        log.info("===>DynamicTask开启集群模式：{}。nodeId = {}", clusterProperties.getMode(), nodeId);
+        if (clusterProperties.getMode() != DynamicTaskProperties.ClusterMode.SHARDING) {
+            return;
+        }
+
+        heartbeat();
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("dynamic-task-heartbeat-"));
+        heartbeatExecutor.scheduleWithFixedDelay(this::heartbeat, clusterProperties.getHeartbeatMillis(),
+                clusterProperties.getHeartbeatMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止心跳，并从存活节点中移除自己，其他节点会在下一次心跳时接管
+     */
+    void stop() {
+        if (heartbeatExecutor == null) {
+            return;
+        }
+
+        heartbeatExecutor.shutdownNow();
+        try {
+            redisTemplate.opsForZSet().remove(nodesKey, nodeId);
+        } catch (Exception e) {
+            log.warn("===>DynamicTask集群节点注销失败：nodeId = {}", nodeId, e);
+        }
+    }
+
+    /**
+     * 登记自己，清理心跳超时的节点，并根据存活节点重建一致性哈希环
+     */
+    private void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            redisTemplate.opsForZSet().add(nodesKey, nodeId, now);
+            redisTemplate.opsForZSet().removeRangeByScore(nodesKey, 0, now - clusterProperties.getNodeTimeoutMillis());
+            Set<String> members = redisTemplate.opsForZSet().range(nodesKey, 0, -1);
+
+            List<String> nodes = new ArrayList<>(members == null ? Collections.<String>emptySet() : members);
+            if (!nodes.contains(nodeId)) {
+                nodes.add(nodeId);
+            }
+            Collections.sort(nodes);
+            if (!nodes.equals(liveNodes)) {
+                log.info("===>DynamicTask集群节点发生变化，重新分配定时任务。存活节点：{}", nodes);
+                ring = new ConsistentHashRing(nodes);
+                liveNodes = nodes;
+            }
+        } catch (Exception e) {
+            log.warn("===>DynamicTask集群心跳失败，沿用上一次的节点列表：{}", liveNodes, e);
+        }
+    }
+
+    /**
+     * 当前节点是否负责执行指定的定时任务。非sharding模式下总是返回true
+     * @param taskId    任务id
+     */
+    boolean isOwner(String taskId) {
+        return clusterProperties.getMode() != DynamicTaskProperties.ClusterMode.SHARDING
+                || nodeId.equals(ring.getNode(taskId));
+    }
+
+    /**
+     * 抢占本次触发的租约，抢到后执行业务逻辑
+     * @param taskId        任务id
+     * @param scheduledTime 本次触发的计划执行时间，各个节点相同
+     * @param command       业务逻辑
+     */
+    void execute(String taskId, long scheduledTime, Runnable command) {
+        // 使用hash tag，保证redis集群下两个key在同一个slot
+        String leaseKey = clusterProperties.getKeyPrefix() + "lease:{" + taskId + "}:" + scheduledTime;
+        String fencingKey = clusterProperties.getKeyPrefix() + "fencing:{" + taskId + "}";
+        Long fencingToken = redisTemplate.execute(LEASE_SCRIPT, Arrays.asList(leaseKey, fencingKey),
+                nodeId, String.valueOf(clusterProperties.getLeaseMillis()));
+        if (fencingToken == null || fencingToken <= 0) {
+            log.debug("本次触发已由其他节点执行：taskId = {}，scheduledTime = {}", taskId, scheduledTime);
+            return;
+        }
+
+        FENCING_TOKEN.set(fencingToken);
+        try {
+            command.run();
+        } finally {
+            FENCING_TOKEN.remove();
+        }
+    }
+}
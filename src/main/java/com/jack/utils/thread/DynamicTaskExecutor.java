@@ -0,0 +1,325 @@
+package com.jack.utils.thread;
+
+import com.jack.utils.config.DynamicTaskProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * 执行{@link DynamicTask}定时任务的线程池。
+ * <p></p>
+ * 线程数量、队列、拒绝策略都可以通过配置项<b><i>jack.task.pool.*</i></b>指定，参考{@link DynamicTaskProperties.Pool}。
+ * 另外支持按分组限制并发数量，避免某一组定时任务占满线程池，导致其他任务无法执行。
+ * <p></p>
+ * 如果定时任务大多是IO密集型的（例如通过http拉取数据），可以开启虚拟线程（jack.task.pool.virtual-threads = true），
+ * 每次执行都使用一个新的虚拟线程，并发数量由jack.task.pool.virtual-thread-concurrency限制。
+ * 虚拟线程需要JDK 21及以上版本，低版本的JDK会回退到普通的线程池。
+ */
+@Slf4j
+class DynamicTaskExecutor {
+
+    /**
+     * 没有指定分组的定时任务，属于此分组
+     */
+    static final String DEFAULT_GROUP = "default";
+
+    private final DynamicTaskProperties.Pool poolProperties;
+    private final Supplier<TaskScheduler> taskSchedulerSupplier;
+    private final ExecutorService executorService;
+
+    /**
+     * 执行指标，为null时不记录
+     */
+    private final DynamicTaskMetrics metrics;
+
+    /**
+     * 虚拟线程模式下的并发限制。普通线程池模式下为null
+     */
+    private final Semaphore virtualThreadPermits;
+
+    /**
+     * 分组的并发限制。不限制并发的分组缓存为empty
+     */
+    private final ConcurrentHashMap<String, Optional<Semaphore>> groupSemaphores = new ConcurrentHashMap<>();
+
+    /**
+     * @param poolProperties        线程池配置
+     * @param taskSchedulerSupplier 拒绝策略为{@link DynamicTaskProperties.RejectionPolicy#RETRY_LATER}时，用于延迟重试
+     * @param metrics               执行指标，为null时不记录
+     */
+    DynamicTaskExecutor(DynamicTaskProperties.Pool poolProperties, Supplier<TaskScheduler> taskSchedulerSupplier,
+                        DynamicTaskMetrics metrics) {
+        Assert.isTrue(poolProperties.getCoreSize() > 0, "jack.task.pool.core-size must be greater than 0");
+        Assert.isTrue(poolProperties.getMaxSize() >= poolProperties.getCoreSize(),
+                "jack.task.pool.max-size must be greater than or equal to core-size");
+        Assert.isTrue(poolProperties.getRejectionPolicy() != DynamicTaskProperties.RejectionPolicy.DISCARD_OLDEST
+                        || poolProperties.getQueueType() != DynamicTaskProperties.QueueType.SYNCHRONOUS,
+                "jack.task.pool.rejection-policy = discard-oldest requires a linked or array queue");
+
+        this.poolProperties = poolProperties;
+        this.taskSchedulerSupplier = taskSchedulerSupplier;
+        this.metrics = metrics;
+
+        ExecutorService virtualThreadExecutor = poolProperties.isVirtualThreads() ? newVirtualThreadExecutor() : null;
+        if (virtualThreadExecutor != null) {
+            Assert.isTrue(poolProperties.getVirtualThreadConcurrency() > 0,
+                    "jack.task.pool.virtual-thread-concurrency must be greater than 0");
+            log.info("===>DynamicTask使用虚拟线程执行定时任务。最大并发数量 = {}", poolProperties.getVirtualThreadConcurrency());
+            this.executorService = virtualThreadExecutor;
+            this.virtualThreadPermits = new Semaphore(poolProperties.getVirtualThreadConcurrency());
+        } else {
+            this.executorService = new ThreadPoolExecutor(poolProperties.getCoreSize(),
+                    poolProperties.getMaxSize(),
+                    poolProperties.getKeepAliveSeconds(),
+                    TimeUnit.SECONDS,
+                    createQueue(poolProperties),
+                    new CustomizableThreadFactory("dynamic-task-"),
+                    (runnable, executor) -> rejected((Job) runnable, executor));
+            this.virtualThreadPermits = null;
+        }
+    }
+
+    /**
+     * 通过反射创建虚拟线程的线程池，兼容JDK 8的编译
+     * @return  虚拟线程的线程池。如果当前JDK不支持虚拟线程，返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "dynamic-task-virtual-", 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            log.warn("===>当前JDK（{}）不支持虚拟线程，DynamicTask将使用普通的线程池", System.getProperty("java.version"));
+            return null;
+        } catch (ReflectiveOperationException e) {
+            log.warn("===>创建虚拟线程池失败，DynamicTask将使用普通的线程池", e);
+            return null;
+        }
+    }
+
+    private static BlockingQueue<Runnable> createQueue(DynamicTaskProperties.Pool poolProperties) {
+        switch (poolProperties.getQueueType()) {
+            case SYNCHRONOUS:
+                return new SynchronousQueue<>();
+            case ARRAY:
+                return new ArrayBlockingQueue<>(poolProperties.getQueueCapacity());
+            case LINKED:
+            default:
+                return new LinkedBlockingQueue<>(poolProperties.getQueueCapacity());
+        }
+    }
+
+    /**
+     * 提交定时任务
+     * @param group     分组，为null时属于{@link #DEFAULT_GROUP}
+     * @param taskId    任务id
+     * @param command   要执行的业务逻辑
+     */
+    void execute(String group, String taskId, Runnable command) {
+        execute(group, taskId, command, null);
+    }
+
+    /**
+     * 提交定时任务
+     * @param group         分组，为null时属于{@link #DEFAULT_GROUP}
+     * @param taskId        任务id
+     * @param command       要执行的业务逻辑
+     * @param completion    执行完成或者最终被丢弃时回调，只回调一次。可以为null
+     */
+    void execute(String group, String taskId, Runnable command, Runnable completion) {
+        Job job = new Job(group == null ? DEFAULT_GROUP : group, taskId, command, metrics);
+        job.completion = completion;
+        submit(job);
+    }
+
+    private void submit(Job job) {
+        Semaphore semaphore = getGroupSemaphore(job.group);
+        if (semaphore != null && !semaphore.tryAcquire()) {
+            // 分组的并发已满。除了延迟重试以外，其他拒绝策略都会突破分组的限制，所以直接丢弃
+            if (poolProperties.getRejectionPolicy() == DynamicTaskProperties.RejectionPolicy.RETRY_LATER) {
+                retryLater(job);
+            } else {
+                discard(job);
+                log.warn("定时任务分组的并发数量已满，丢弃本次执行：group = {}，taskId = {}", job.group, job.taskId);
+            }
+            return;
+        }
+
+        job.groupPermit = semaphore;
+        if (virtualThreadPermits != null && !virtualThreadPermits.tryAcquire()) {
+            rejected(job, null);
+            return;
+        }
+
+        job.executorPermit = virtualThreadPermits;
+        try {
+            executorService.execute(job);
+        } catch (RejectedExecutionException e) {
+            // 虚拟线程的线程池没有拒绝策略，只有在关闭之后才会拒绝
+            job.release();
+            discard(job);
+            log.warn("线程池已关闭，丢弃定时任务：taskId = {}", job.taskId);
+        }
+    }
+
+    private Semaphore getGroupSemaphore(String group) {
+        return groupSemaphores.computeIfAbsent(group, key -> {
+            int limit = poolProperties.getGroupConcurrency().getOrDefault(key, poolProperties.getDefaultGroupConcurrency());
+            return limit > 0 ? Optional.of(new Semaphore(limit)) : Optional.empty();
+        }).orElse(null);
+    }
+
+    /**
+     * 线程池已满（或者虚拟线程的并发数量已满）时，按照拒绝策略处理
+     * @param job       被拒绝的任务
+     * @param executor  普通线程池。虚拟线程模式下为null，此时discard-oldest等同于abort
+     */
+    private void rejected(Job job, ThreadPoolExecutor executor) {
+        if (executorService.isShutdown()) {
+            job.release();
+            discard(job);
+            log.warn("线程池已关闭，丢弃定时任务：taskId = {}", job.taskId);
+            return;
+        }
+
+        switch (poolProperties.getRejectionPolicy()) {
+            case CALLER_RUNS:
+                job.run();
+                break;
+            case DISCARD_OLDEST:
+                if (executor == null) {
+                    job.release();
+                    discard(job);
+                    log.error("虚拟线程的并发数量已满，丢弃定时任务：taskId = {}", job.taskId);
+                    break;
+                }
+                Runnable oldest = executor.getQueue().poll();
+                if (oldest instanceof Job) {
+                    ((Job) oldest).release();
+                    discard((Job) oldest);
+                    log.warn("线程池已满，丢弃最早提交的定时任务：taskId = {}", ((Job) oldest).taskId);
+                }
+                if (!executor.getQueue().offer(job)) {
+                    job.release();
+                    discard(job);
+                    log.warn("线程池已满，丢弃定时任务：taskId = {}", job.taskId);
+                }
+                break;
+            case RETRY_LATER:
+                job.release();
+                retryLater(job);
+                break;
+            case ABORT:
+            default:
+                job.release();
+                discard(job);
+                log.error("线程池已满，丢弃定时任务：taskId = {}", job.taskId);
+        }
+    }
+
+    private void retryLater(Job job) {
+        TaskScheduler taskScheduler = taskSchedulerSupplier.get();
+        if (taskScheduler == null || job.attempts >= poolProperties.getMaxRetries()) {
+            discard(job);
+            log.error("定时任务重试{}次后仍无法执行，丢弃本次执行：taskId = {}", job.attempts, job.taskId);
+            return;
+        }
+
+        job.attempts++;
+        log.warn("线程池已满，{}ms后第{}次重试定时任务：taskId = {}", poolProperties.getRetryDelayMillis(), job.attempts, job.taskId);
+        taskScheduler.schedule(() -> submit(job), new Date(System.currentTimeMillis() + poolProperties.getRetryDelayMillis()));
+    }
+
+    /**
+     * 最终丢弃任务：记录拒绝次数，并回调completion
+     */
+    private void discard(Job job) {
+        if (metrics != null) {
+            metrics.recordRejection(job.taskId, job.group);
+        }
+        job.complete();
+    }
+
+    /**
+     * 关闭线程池，等待正在执行以及队列中的任务完成
+     * @param awaitTerminationSeconds   最长等待时间，单位：秒。超时后中断正在执行的任务
+     */
+    void shutdown(long awaitTerminationSeconds) {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(awaitTerminationSeconds, TimeUnit.SECONDS)) {
+                log.warn("===>DynamicTask线程池在{}秒内未能关闭，将中断正在执行的任务", awaitTerminationSeconds);
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Job implements Runnable {
+        private final String group;
+        private final String taskId;
+        private final Runnable command;
+        private final DynamicTaskMetrics metrics;
+        private final long submitNanos = System.nanoTime();   // 首次提交的时间，用于统计排队时间
+        private Runnable completion;    // 执行完成或者最终被丢弃时回调
+        private int attempts;   // 已经重试的次数
+        private Semaphore groupPermit;  // 占用的分组并发许可，执行完成或者丢弃时释放
+        private Semaphore executorPermit;   // 占用的虚拟线程并发许可，执行完成或者丢弃时释放
+
+        Job(String group, String taskId, Runnable command, DynamicTaskMetrics metrics) {
+            this.group = group;
+            this.taskId = taskId;
+            this.command = command;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void run() {
+            if (metrics != null) {
+                metrics.recordQueueWait(taskId, group, System.nanoTime() - submitNanos);
+            }
+            try {
+                command.run();
+            } catch (Throwable e) {
+                log.error("定时任务执行失败：taskId = {}", taskId, e);
+            } finally {
+                release();
+                complete();
+            }
+        }
+
+        void complete() {
+            Runnable completion = this.completion;
+            if (completion != null) {
+                this.completion = null;
+                try {
+                    completion.run();
+                } catch (Throwable e) {
+                    log.error("定时任务的完成回调执行失败：taskId = {}", taskId, e);
+                }
+            }
+        }
+
+        void release() {
+            if (groupPermit != null) {
+                groupPermit.release();
+                groupPermit = null;
+            }
+            if (executorPermit != null) {
+                executorPermit.release();
+                executorPermit = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.jack.utils.thread;
+
+import java.util.function.Consumer;
+
+/**
+ * {@link DynamicTask}定时任务的处理器。实现此接口并注入到spring容器中，会以bean名称自动注册，
+ * 定时任务通过{@link DynamicTask.TaskConstant#TaskConstant(String)}按名称引用处理器。
+ * <p></p>
+ * 按名称引用处理器的定时任务可以持久化（参考{@link DynamicTaskStore}），应用重启后自动恢复。
+ * 也可以通过{@link DynamicTask#registerHandler(String, Consumer)}手动注册。
+ */
+@FunctionalInterface
+public interface DynamicTaskHandler extends Consumer<String> {
+}
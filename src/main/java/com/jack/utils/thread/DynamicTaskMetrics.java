@@ -0,0 +1,258 @@
+package com.jack.utils.thread;
+
+import lombok.Data;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link DynamicTask}定时任务的执行指标，按任务统计：
+ * <ul>
+ *     <li>lag：实际触发时间与计划执行时间的差值，反映调度器是否过载</li>
+ *     <li>queue wait：提交到线程池之后，等待执行的时间，反映线程池是否过载</li>
+ *     <li>duration：业务逻辑的执行时间，反映消费者是否过慢</li>
+ *     <li>成功、失败、被拒绝（线程池已满等原因被丢弃）、因重叠执行被跳过的次数</li>
+ * </ul>
+ * 通过{@link DynamicTask#getMetrics()}获取，只提供只读的快照。如果引入了Micrometer并且容器中存在MeterRegistry，还会同时发布到Micrometer。
+ * <p></p>
+ * 统计使用LongAdder，记录指标不加锁，对定时任务的执行几乎没有影响。
+ */
+public class DynamicTaskMetrics {
+
+    /**
+     * 指标的监听器，用于把指标同时发布到其他监控系统（例如Micrometer）
+     */
+    interface Listener {
+        void onLag(String taskId, String group, long lagNanos);
+
+        void onQueueWait(String taskId, String group, long waitNanos);
+
+        void onExecution(String taskId, String group, long durationNanos, boolean success);
+
+        void onRejection(String taskId, String group);
+
+        void onSkip(String taskId, String group);
+
+        void onRemove(String taskId);
+    }
+
+    /**
+     * key = 执行时的任务id（带有前缀）
+     */
+    private final ConcurrentHashMap<String, TaskStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 执行时的任务id的前缀，快照和监听器中使用去掉前缀的任务id
+     */
+    private final String taskIdPrefix;
+
+    private volatile Listener listener;
+
+    DynamicTaskMetrics(String taskIdPrefix) {
+        this.taskIdPrefix = taskIdPrefix;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    void recordLag(String taskId, String group, long lagNanos) {
+        TaskStats taskStats = getStats(taskId, group);
+        taskStats.lag.record(lagNanos);
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onLag(taskStats.taskId, taskStats.group, lagNanos);
+        }
+    }
+
+    void recordQueueWait(String taskId, String group, long waitNanos) {
+        TaskStats taskStats = getStats(taskId, group);
+        taskStats.queueWait.record(waitNanos);
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onQueueWait(taskStats.taskId, taskStats.group, waitNanos);
+        }
+    }
+
+    void recordExecution(String taskId, String group, long durationNanos, boolean success) {
+        TaskStats taskStats = getStats(taskId, group);
+        taskStats.duration.record(durationNanos);
+        (success ? taskStats.successes : taskStats.failures).increment();
+        taskStats.lastExecutionTime = System.currentTimeMillis();
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onExecution(taskStats.taskId, taskStats.group, durationNanos, success);
+        }
+    }
+
+    void recordRejection(String taskId, String group) {
+        TaskStats taskStats = getStats(taskId, group);
+        taskStats.rejections.increment();
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onRejection(taskStats.taskId, taskStats.group);
+        }
+    }
+
+    void recordSkip(String taskId, String group) {
+        TaskStats taskStats = getStats(taskId, group);
+        taskStats.skips.increment();
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onSkip(taskStats.taskId, taskStats.group);
+        }
+    }
+
+    /**
+     * 定时任务删除后，移除它的指标
+     */
+    void remove(String taskId) {
+        TaskStats taskStats = stats.remove(taskId);
+        if (taskStats != null) {
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onRemove(taskStats.taskId);
+            }
+        }
+    }
+
+    private TaskStats getStats(String taskId, String group) {
+        TaskStats taskStats = stats.get(taskId);
+        if (taskStats == null) {
+            taskStats = stats.computeIfAbsent(taskId,
+                    key -> new TaskStats(key.startsWith(taskIdPrefix) ? key.substring(taskIdPrefix.length()) : key,
+                            group == null ? DynamicTaskExecutor.DEFAULT_GROUP : group));
+        }
+        return taskStats;
+    }
+
+    /**
+     * 获取全部定时任务的指标快照
+     * @return  key = 任务id，value = 指标快照
+     */
+    public Map<String, TaskMetrics> snapshot() {
+        Map<String, TaskMetrics> snapshot = new LinkedHashMap<>();
+        stats.values().forEach(taskStats -> snapshot.put(taskStats.taskId, taskStats.snapshot()));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * 获取指定定时任务的指标快照
+     * @param taskId    任务id
+     * @return  指标快照。还没有执行过时返回null
+     */
+    public TaskMetrics snapshot(String taskId) {
+        TaskStats taskStats = stats.get(taskIdPrefix + taskId);
+        return taskStats == null ? null : taskStats.snapshot();
+    }
+
+    private static final class TaskStats {
+        private final String taskId;
+        private final String group;
+        private final Distribution lag = new Distribution();
+        private final Distribution queueWait = new Distribution();
+        private final Distribution duration = new Distribution();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder rejections = new LongAdder();
+        private final LongAdder skips = new LongAdder();
+        private volatile long lastExecutionTime;
+
+        TaskStats(String taskId, String group) {
+            this.taskId = taskId;
+            this.group = group;
+        }
+
+        TaskMetrics snapshot() {
+            TaskMetrics metrics = new TaskMetrics();
+            metrics.setTaskId(taskId);
+            metrics.setGroup(group);
+            metrics.setSuccesses(successes.sum());
+            metrics.setFailures(failures.sum());
+            metrics.setRejections(rejections.sum());
+            metrics.setSkips(skips.sum());
+            metrics.setAvgLagMillis(lag.avgMillis());
+            metrics.setMaxLagMillis(lag.maxMillis());
+            metrics.setAvgQueueWaitMillis(queueWait.avgMillis());
+            metrics.setMaxQueueWaitMillis(queueWait.maxMillis());
+            metrics.setAvgDurationMillis(duration.avgMillis());
+            metrics.setMaxDurationMillis(duration.maxMillis());
+            metrics.setLastExecutionTime(lastExecutionTime == 0 ? null : lastExecutionTime);
+            return metrics;
+        }
+    }
+
+    /**
+     * 记录次数、总和、最大值，单位：纳秒
+     */
+    private static final class Distribution {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+        void record(long nanos) {
+            long value = Math.max(0L, nanos);
+            count.increment();
+            total.add(value);
+            max.accumulate(value);
+        }
+
+        double avgMillis() {
+            long n = count.sum();
+            return n == 0 ? 0D : (double) total.sum() / n / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        double maxMillis() {
+            return (double) max.get() / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    /**
+     * 定时任务的指标快照。时间的单位都是毫秒
+     */
+    @Data
+    public static class TaskMetrics {
+        private String taskId;
+        private String group;
+        /**
+         * 执行成功的次数
+         */
+        private long successes;
+        /**
+         * 执行失败（抛出异常）的次数
+         */
+        private long failures;
+        /**
+         * 被拒绝（线程池已满、分组并发已满等原因被丢弃）的次数
+         */
+        private long rejections;
+        /**
+         * 上一次执行还没有完成，被跳过或者合并的触发次数（参考配置项jack.task.overlap-policy）
+         */
+        private long skips;
+        /**
+         * 实际触发时间与计划执行时间的差值
+         */
+        private double avgLagMillis;
+        private double maxLagMillis;
+        /**
+         * 在线程池中等待执行的时间
+         */
+        private double avgQueueWaitMillis;
+        private double maxQueueWaitMillis;
+        /**
+         * 业务逻辑的执行时间
+         */
+        private double avgDurationMillis;
+        private double maxDurationMillis;
+        /**
+         * 最后一次执行完成的时间，毫秒时间戳。还没有执行过时为null
+         */
+        private Long lastExecutionTime;
+    }
+}
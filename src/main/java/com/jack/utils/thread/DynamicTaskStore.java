@@ -0,0 +1,127 @@
+package com.jack.utils.thread;
+
+import com.jack.utils.config.DynamicTaskProperties;
+import lombok.Data;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link DynamicTask}定时任务的持久化存储。
+ * <p></p>
+ * 持久化的定时任务在应用重启后会自动加载，不需要重新添加；重启期间错过的触发按照补偿策略（misfire policy）处理。
+ * 只有指定了处理器名称（{@link DynamicTask.TaskConstant#getHandler()}）的定时任务才会持久化，因为回调函数本身无法持久化。
+ * <p></p>
+ * 内置了redis（{@link RedisDynamicTaskStore}）和jdbc（{@link JdbcDynamicTaskStore}）两种实现，通过配置项jack.task.store.type选择。
+ * 也可以自行实现此接口并注入到spring容器中。
+ * <p></p>
+ * 定时任务按id的哈希值分为{@value #PARTITIONS}个分区，启动时各个分区并行加载。
+ */
+public interface DynamicTaskStore {
+
+    /**
+     * 分区数量
+     */
+    int PARTITIONS = 16;
+
+    /**
+     * 保存定时任务。如果已经存在则更新，但是不修改最后一次触发时间
+     * @param definition    定时任务
+     */
+    void save(TaskDefinition definition);
+
+    /**
+     * 批量保存定时任务
+     * @param definitions   定时任务
+     */
+    void saveAll(Collection<TaskDefinition> definitions);
+
+    /**
+     * 删除定时任务
+     * @param taskId    任务id
+     */
+    void delete(String taskId);
+
+    /**
+     * 加载一个分区中的全部定时任务
+     * @param partition 分区，取值范围[0, {@link #PARTITIONS})
+     * @return  定时任务
+     */
+    List<TaskDefinition> load(int partition);
+
+    /**
+     * 更新最后一次触发时间
+     * @param taskId        任务id
+     * @param lastFireTime  最后一次触发的计划执行时间，毫秒时间戳
+     */
+    void updateLastFireTime(String taskId, long lastFireTime);
+
+    /**
+     * 计算定时任务所在的分区
+     * @param taskId    任务id
+     * @return  分区
+     */
+    static int partitionOf(String taskId) {
+        return Math.floorMod(taskId.hashCode(), PARTITIONS);
+    }
+
+    @Data
+    class TaskDefinition {
+        /**
+         * 任务id
+         */
+        private String taskId;
+        /**
+         * 触发方式，为null时等同于cron
+         */
+        private DynamicTask.TriggerType triggerType;
+        /**
+         * cron表达式
+         */
+        private String cron;
+        /**
+         * 触发周期，单位：毫秒
+         */
+        private long periodMillis;
+        /**
+         * 首次触发的延迟时间，单位：毫秒
+         */
+        private long initialDelayMillis;
+        /**
+         * 首次触发的时间，毫秒时间戳
+         */
+        private Long startTime;
+        /**
+         * 随机抖动的最大值，单位：毫秒
+         */
+        private long jitterMillis;
+        /**
+         * 定时任务的描述信息
+         */
+        private String rule;
+        /**
+         * 分组
+         */
+        private String group;
+        /**
+         * 处理器名称
+         */
+        private String handler;
+        /**
+         * 补偿策略，为null时使用配置项jack.task.store.misfire-policy
+         */
+        private DynamicTaskProperties.MisfirePolicy misfirePolicy;
+        /**
+         * 重叠执行策略，为null时使用配置项jack.task.overlap-policy
+         */
+        private DynamicTaskProperties.OverlapPolicy overlapPolicy;
+        /**
+         * 同时执行的最大数量，为null时使用配置项jack.task.max-concurrent-runs
+         */
+        private Integer maxConcurrentRuns;
+        /**
+         * 最后一次触发的计划执行时间，毫秒时间戳
+         */
+        private Long lastFireTime;
+    }
+}
@@ -0,0 +1,149 @@
+package com.jack.utils.thread;
+
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.scheduling.support.CronTrigger;
+
+import java.util.Date;
+
+/**
+ * {@link DynamicTask}定时任务的触发器，支持cron、fixed-rate、fixed-delay、one-shot四种类型，精度为毫秒。
+ * <p></p>
+ * 可以指定随机抖动（jitter）：每次触发的时间在原本的基础上延后[0, jitter]毫秒，避免大量周期相同的定时任务在同一时刻触发。
+ * 抖动由任务id和原本的触发时间计算得到，同一次触发在各个节点上的抖动相同，集群模式的租约不受影响。
+ * <p></p>
+ * 触发器是无状态的，下一次的触发时间只由{@link TriggerContext}决定，所以也可以用于计算重启期间错过的触发。
+ */
+final class DynamicTaskTrigger implements Trigger {
+
+    private final DynamicTask.TriggerType type;
+    private final CronTrigger cronTrigger;
+    private final long periodMillis;
+    private final long initialDelayMillis;
+    private final Long startTime;
+    private final long jitterMillis;
+    private final long jitterSeed;
+
+    private DynamicTaskTrigger(DynamicTask.TriggerType type, CronTrigger cronTrigger, long periodMillis,
+                               long initialDelayMillis, Long startTime, long jitterMillis, String taskId) {
+        this.type = type;
+        this.cronTrigger = cronTrigger;
+        this.periodMillis = periodMillis;
+        this.initialDelayMillis = initialDelayMillis;
+        this.startTime = startTime;
+        this.jitterMillis = Math.max(0L, jitterMillis);
+        this.jitterSeed = taskId.hashCode();
+    }
+
+    static DynamicTaskTrigger cron(CronTrigger cronTrigger, long jitterMillis, String taskId) {
+        return new DynamicTaskTrigger(DynamicTask.TriggerType.CRON, cronTrigger, 0L, 0L, null, jitterMillis, taskId);
+    }
+
+    /**
+     * @param startTime 不为null时，以此时间为起点每隔periodMillis触发一次；为null时按照periodMillis对齐到整点，各个节点的触发时间相同
+     */
+    static DynamicTaskTrigger fixedRate(long periodMillis, long initialDelayMillis, Long startTime, long jitterMillis, String taskId) {
+        return new DynamicTaskTrigger(DynamicTask.TriggerType.FIXED_RATE, null, periodMillis, initialDelayMillis, startTime,
+                jitterMillis, taskId);
+    }
+
+    static DynamicTaskTrigger fixedDelay(long periodMillis, long initialDelayMillis, Long startTime, long jitterMillis, String taskId) {
+        return new DynamicTaskTrigger(DynamicTask.TriggerType.FIXED_DELAY, null, periodMillis, initialDelayMillis, startTime,
+                jitterMillis, taskId);
+    }
+
+    static DynamicTaskTrigger oneShot(long startTime, long jitterMillis, String taskId) {
+        return new DynamicTaskTrigger(DynamicTask.TriggerType.ONE_SHOT, null, 0L, 0L, startTime, jitterMillis, taskId);
+    }
+
+    DynamicTask.TriggerType getType() {
+        return type;
+    }
+
+    @Override
+    public Date nextExecutionTime(TriggerContext triggerContext) {
+        Date lastScheduled = triggerContext.lastScheduledExecutionTime();
+        long base;
+        switch (type) {
+            case CRON:
+                Date next = cronTrigger.nextExecutionTime(triggerContext);
+                if (next == null) {
+                    return null;
+                }
+                base = next.getTime();
+                break;
+            case FIXED_RATE:
+                if (lastScheduled == null) {
+                    long earliest = System.currentTimeMillis() + initialDelayMillis;
+                    base = startTime != null && startTime >= earliest ? startTime : ceilToGrid(earliest);
+                } else {
+                    // 抖动小于周期，向下取整即可得到上一次原本的触发时间，不会因为抖动而漂移
+                    base = floorToGrid(lastScheduled.getTime()) + periodMillis;
+                }
+                break;
+            case FIXED_DELAY:
+                if (lastScheduled == null) {
+                    long earliest = System.currentTimeMillis() + initialDelayMillis;
+                    base = startTime != null ? Math.max(startTime, earliest) : earliest;
+                } else {
+                    Date lastCompletion = triggerContext.lastCompletionTime();
+                    base = (lastCompletion != null ? lastCompletion : lastScheduled).getTime() + periodMillis;
+                }
+                break;
+            case ONE_SHOT:
+            default:
+                if (lastScheduled != null) {
+                    return null;
+                }
+                base = startTime;
+        }
+        return new Date(base + jitter(base));
+    }
+
+    private long gridAnchor() {
+        return startTime != null ? startTime : 0L;
+    }
+
+    private long floorToGrid(long time) {
+        long anchor = gridAnchor();
+        return anchor + Math.floorDiv(time - anchor, periodMillis) * periodMillis;
+    }
+
+    private long ceilToGrid(long time) {
+        long floor = floorToGrid(time);
+        return floor == time ? floor : floor + periodMillis;
+    }
+
+    /**
+     * 由任务id和原本的触发时间决定的抖动，使用murmur3的fmix64打散
+     */
+    private long jitter(long base) {
+        if (jitterMillis == 0) {
+            return 0L;
+        }
+
+        long hash = jitterSeed * 31 + base;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return Math.floorMod(hash, jitterMillis + 1);
+    }
+
+    @Override
+    public String toString() {
+        String jitter = jitterMillis > 0 ? "，jitter = " + jitterMillis + "ms" : "";
+        switch (type) {
+            case CRON:
+                return "cron = " + cronTrigger.getExpression() + jitter;
+            case FIXED_RATE:
+                return "fixed-rate = " + periodMillis + "ms" + jitter;
+            case FIXED_DELAY:
+                return "fixed-delay = " + periodMillis + "ms" + jitter;
+            case ONE_SHOT:
+            default:
+                return "one-shot = " + new Date(startTime) + jitter;
+        }
+    }
+}
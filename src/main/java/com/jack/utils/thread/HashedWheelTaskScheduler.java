@@ -0,0 +1,410 @@
+package com.jack.utils.thread;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.PeriodicTrigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+import org.springframework.util.Assert;
+
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * 基于分层时间轮（hierarchical hashed wheel timer）的任务调度器。
+ * <p></p>
+ * {@link org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler}底层是一个堆（DelayedWorkQueue），
+ * 每次添加、取消任务的时间复杂度都是O(log n)。当定时任务的数量非常多时（例如十万级别），
+ * 可以使用时间轮替代：添加、取消任务都是O(1)，代价是执行时间的精度为一个刻度（tick）。
+ * <p></p>
+ * 时间轮共有{@value #LEVELS}层，每层有wheelSize个槽位。第0层每个槽位代表一个刻度，第n层每个槽位代表第n-1层转一圈的时间。
+ * 较远的任务放在高层的时间轮中，随着时间推进逐层下降，最终在第0层到期执行。
+ * <p></p>
+ * 所有对时间轮的修改都由单个工作线程完成，其他线程添加、取消任务只是放入无锁队列，所以不需要加锁。
+ * 到期的任务默认在工作线程中执行，<b><i>任务本身需要足够轻量</i></b>（比如只是提交到线程池），否则会影响其他任务的准时执行。
+ */
+@Slf4j
+public class HashedWheelTaskScheduler implements TaskScheduler, DisposableBean {
+
+    /**
+     * 时间轮的层数
+     */
+    private static final int LEVELS = 4;
+
+    private final long tickNanos;
+    private final int wheelBits;
+    private final int wheelMask;
+    private final Bucket[][] wheels;
+    private final Executor executor;
+
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final long startTime;
+    private final Thread workerThread;
+    private volatile boolean running = true;
+
+    /**
+     * 工作线程当前处理的刻度，只在工作线程中修改
+     */
+    private long currentTick;
+
+    /**
+     * 到期的任务在时间轮的工作线程中执行
+     * @param tickMillis    刻度，单位：毫秒
+     * @param wheelSize     每层时间轮的槽位数量，会向上取整为2的幂
+     */
+    public HashedWheelTaskScheduler(long tickMillis, int wheelSize) {
+        this(tickMillis, wheelSize, Runnable::run);
+    }
+
+    /**
+     * @param tickMillis    刻度，单位：毫秒
+     * @param wheelSize     每层时间轮的槽位数量，会向上取整为2的幂
+     * @param executor      执行到期任务的线程池
+     */
+    public HashedWheelTaskScheduler(long tickMillis, int wheelSize, Executor executor) {
+        Assert.isTrue(tickMillis > 0, "tickMillis must be greater than 0");
+        Assert.isTrue(wheelSize > 1 && wheelSize <= 1 << 16, "wheelSize must be between 2 and 65536");
+        Assert.notNull(executor, "executor can not be null");
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheelBits = 32 - Integer.numberOfLeadingZeros(wheelSize - 1);
+        this.wheelMask = (1 << wheelBits) - 1;
+        this.executor = executor;
+        this.wheels = new Bucket[LEVELS][1 << wheelBits];
+        for (Bucket[] wheel : wheels) {
+            for (int i = 0; i < wheel.length; i++) {
+                wheel[i] = new Bucket();
+            }
+        }
+
+        this.startTime = System.nanoTime();
+        this.workerThread = new Thread(this::work, "hashed-wheel-task-scheduler");
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+        Assert.notNull(task, "task can not be null");
+        Assert.notNull(trigger, "trigger can not be null");
+        return new Timeout(task, trigger).schedule(trigger.nextExecutionTime(new SimpleTriggerContext()));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+        Assert.notNull(task, "task can not be null");
+        Assert.notNull(startTime, "startTime can not be null");
+        return new Timeout(task, null).schedule(startTime);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+        return schedule(task, periodicTrigger(startTime.getTime() - System.currentTimeMillis(), period, true));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+        return schedule(task, periodicTrigger(0L, period, true));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+        return schedule(task, periodicTrigger(startTime.getTime() - System.currentTimeMillis(), delay, false));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+        return schedule(task, periodicTrigger(0L, delay, false));
+    }
+
+    private PeriodicTrigger periodicTrigger(long initialDelay, long period, boolean fixedRate) {
+        PeriodicTrigger trigger = new PeriodicTrigger(period, TimeUnit.MILLISECONDS);
+        trigger.setInitialDelay(Math.max(initialDelay, 0L));
+        trigger.setFixedRate(fixedRate);
+        return trigger;
+    }
+
+    /**
+     * 停止时间轮，尚未执行的任务不会再执行
+     */
+    @Override
+    public void destroy() {
+        running = false;
+        workerThread.interrupt();
+    }
+
+    private void work() {
+        while (running) {
+            long deadline = startTime + currentTick * tickNanos;
+            long sleepNanos = deadline - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+                continue;
+            }
+
+            processCancelledTimeouts();
+            processPendingTimeouts();
+
+            // 从高层到低层，把到达边界的槽位中的任务放到下一层
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = level * wheelBits;
+                if ((currentTick & ((1L << shift) - 1)) == 0) {
+                    Bucket bucket = wheels[level][(int) ((currentTick >>> shift) & wheelMask)];
+                    for (Timeout timeout = bucket.poll(); timeout != null; timeout = bucket.poll()) {
+                        place(timeout);
+                    }
+                }
+            }
+
+            Bucket bucket = wheels[0][(int) (currentTick & wheelMask)];
+            for (Timeout timeout = bucket.poll(); timeout != null; timeout = bucket.poll()) {
+                if (timeout.deadlineTick > currentTick) {
+                    place(timeout);
+                } else {
+                    expire(timeout);
+                }
+            }
+
+            currentTick++;
+        }
+    }
+
+    private void processCancelledTimeouts() {
+        for (Timeout timeout = cancelledTimeouts.poll(); timeout != null; timeout = cancelledTimeouts.poll()) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void processPendingTimeouts() {
+        for (Timeout timeout = pendingTimeouts.poll(); timeout != null; timeout = pendingTimeouts.poll()) {
+            if (!timeout.cancelled) {
+                place(timeout);
+            }
+        }
+    }
+
+    /**
+     * 选择能够容纳到期时间的最低一层。超出最高层范围的任务放在最高层最远的槽位，到时会重新计算
+     */
+    private void place(Timeout timeout) {
+        long deadlineTick = Math.max(timeout.deadlineTick, currentTick);
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * wheelBits;
+            if ((deadlineTick >>> shift) - (currentTick >>> shift) <= wheelMask) {
+                wheels[level][(int) ((deadlineTick >>> shift) & wheelMask)].add(timeout);
+                return;
+            }
+        }
+
+        int shift = (LEVELS - 1) * wheelBits;
+        wheels[LEVELS - 1][(int) (((currentTick >>> shift) + wheelMask) & wheelMask)].add(timeout);
+    }
+
+    private void expire(Timeout timeout) {
+        try {
+            executor.execute(timeout);
+        } catch (Throwable e) {
+            log.error("时间轮任务执行失败", e);
+        }
+    }
+
+    /**
+     * 时间轮的槽位，双向链表。只在工作线程中访问
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        Timeout poll() {
+            Timeout timeout = head;
+            if (timeout != null) {
+                remove(timeout);
+            }
+            return timeout;
+        }
+    }
+
+    /**
+     * 时间轮中的任务，同时也是返回给调用方的ScheduledFuture。
+     * <p></p>
+     * 如果指定了触发器，每次执行完成后按照触发器计算下一次的执行时间，重新放入时间轮，
+     * 相当于{@link org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler}中的ReschedulingRunnable。
+     * 同一时刻一个任务最多只在时间轮中出现一次，所以可以直接作为链表的节点，不需要额外的包装对象。
+     */
+    private final class Timeout implements ScheduledFuture<Object>, Runnable {
+        private final Runnable task;
+        private final Trigger trigger;
+        private final SimpleTriggerContext triggerContext;
+
+        private volatile Date scheduledExecutionTime;
+        private volatile long deadlineTick;
+        private volatile boolean cancelled;
+        private volatile boolean done;
+
+        // 以下字段只在工作线程中访问
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        Timeout(Runnable task, Trigger trigger) {
+            this.task = task;
+            this.trigger = trigger;
+            this.triggerContext = trigger == null ? null : new SimpleTriggerContext();
+        }
+
+        /**
+         * 放入待添加队列，由工作线程放入时间轮。任何线程都可以调用，O(1)
+         * @param executionTime 执行时间，为null时表示不再执行
+         */
+        synchronized Timeout schedule(Date executionTime) {
+            if (cancelled) {
+                return this;
+            }
+
+            scheduledExecutionTime = executionTime;
+            if (executionTime == null) {
+                done = true;
+                notifyAll();
+                return this;
+            }
+
+            long delayNanos = TimeUnit.MILLISECONDS.toNanos(executionTime.getTime() - System.currentTimeMillis());
+            long deadline = System.nanoTime() + Math.max(delayNanos, 0L) - startTime;
+            // 向上取整，保证不会提前执行
+            deadlineTick = (deadline + tickNanos - 1) / tickNanos;
+            pendingTimeouts.add(this);
+            return this;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+
+            Date actualExecutionTime = trigger == null ? null : new Date();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                log.error("时间轮任务执行失败", e);
+            }
+
+            if (trigger == null) {
+                schedule(null);
+                return;
+            }
+
+            Date nextExecutionTime;
+            synchronized (this) {
+                triggerContext.update(scheduledExecutionTime, actualExecutionTime, new Date());
+                nextExecutionTime = trigger.nextExecutionTime(triggerContext);
+            }
+            schedule(nextExecutionTime);
+        }
+
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            if (done) {
+                return false;
+            }
+
+            cancelled = true;
+            done = true;
+            cancelledTimeouts.add(this);
+            notifyAll();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public synchronized Object get() throws InterruptedException {
+            while (!done) {
+                wait();
+            }
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            return null;
+        }
+
+        @Override
+        public synchronized Object get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!done) {
+                long waitNanos = deadline - System.nanoTime();
+                if (waitNanos <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+            }
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            return null;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            Date executionTime = scheduledExecutionTime;
+            if (executionTime == null) {
+                return 0L;
+            }
+            return unit.convert(executionTime.getTime() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (this == other) {
+                return 0;
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
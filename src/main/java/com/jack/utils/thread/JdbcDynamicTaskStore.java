@@ -0,0 +1,206 @@
+package com.jack.utils.thread;
+
+import com.jack.utils.config.DynamicTaskProperties;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * 基于关系型数据库的定时任务存储。需要预先创建表（表名通过jack.task.store.table-name指定），以MySQL为例：
+ * <blockquote><pre>
+ *     CREATE TABLE dynamic_task (
+ *         task_id          VARCHAR(128) NOT NULL PRIMARY KEY,
+ *         trigger_type     VARCHAR(16),
+ *         cron             VARCHAR(128),
+ *         period_millis    BIGINT,
+ *         initial_delay_millis BIGINT,
+ *         start_time       BIGINT,
+ *         jitter_millis    BIGINT,
+ *         rule             VARCHAR(255),
+ *         task_group       VARCHAR(64),
+ *         handler          VARCHAR(128) NOT NULL,
+ *         misfire_policy   VARCHAR(16),
+ *         overlap_policy   VARCHAR(16),
+ *         max_concurrent_runs  INT,
+ *         last_fire_time   BIGINT,
+ *         partition_no     INT NOT NULL,
+ *         KEY idx_partition_no (partition_no)
+ *     );
+ * </pre></blockquote>
+ */
+public class JdbcDynamicTaskStore implements DynamicTaskStore {
+
+    private final DataSource dataSource;
+    private final String updateSql;
+    private final String insertSql;
+    private final String deleteSql;
+    private final String selectSql;
+    private final String updateFireTimeSql;
+
+    public JdbcDynamicTaskStore(DataSource dataSource, String tableName) {
+        Assert.isTrue(tableName != null && tableName.matches("[A-Za-z0-9_.]+"), "illegal table name: " + tableName);
+        this.dataSource = dataSource;
+        this.updateSql = "UPDATE " + tableName + " SET trigger_type = ?, period_millis = ?, initial_delay_millis = ?, start_time = ?, jitter_millis = ?, cron = ?, rule = ?, task_group = ?, handler = ?, misfire_policy = ?, overlap_policy = ?, max_concurrent_runs = ?, partition_no = ? WHERE task_id = ?";
+        this.insertSql = "INSERT INTO " + tableName + " (trigger_type, period_millis, initial_delay_millis, start_time, jitter_millis, cron, rule, task_group, handler, misfire_policy, overlap_policy, max_concurrent_runs, partition_no, task_id, last_fire_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        this.deleteSql = "DELETE FROM " + tableName + " WHERE task_id = ?";
+        this.selectSql = "SELECT task_id, trigger_type, period_millis, initial_delay_millis, start_time, jitter_millis, cron, rule, task_group, handler, misfire_policy, overlap_policy, max_concurrent_runs, last_fire_time FROM " + tableName + " WHERE partition_no = ?";
+        this.updateFireTimeSql = "UPDATE " + tableName + " SET last_fire_time = ? WHERE task_id = ?";
+    }
+
+    @Override
+    public void save(TaskDefinition definition) {
+        saveAll(Collections.singletonList(definition));
+    }
+
+    /**
+     * 先批量更新，再批量插入更新不到的记录，整个过程在一个事务中
+     */
+    @Override
+    public void saveAll(Collection<TaskDefinition> definitions) {
+        if (definitions.isEmpty()) {
+            return;
+        }
+
+        List<TaskDefinition> definitionList = new ArrayList<>(definitions);
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                int[] updateCounts;
+                try (PreparedStatement statement = connection.prepareStatement(updateSql)) {
+                    for (TaskDefinition definition : definitionList) {
+                        bind(statement, definition);
+                        statement.addBatch();
+                    }
+                    updateCounts = statement.executeBatch();
+                }
+
+                long now = System.currentTimeMillis();
+                try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+                    boolean hasInsert = false;
+                    for (int i = 0; i < definitionList.size(); i++) {
+                        if (updateCounts[i] != 0) {
+                            // 包括Statement.SUCCESS_NO_INFO
+                            continue;
+                        }
+                        bind(statement, definitionList.get(i));
+                        // 新增的定时任务从当前时间开始计算错过的触发
+                        statement.setLong(15, now);
+                        statement.addBatch();
+                        hasInsert = true;
+                    }
+                    if (hasInsert) {
+                        statement.executeBatch();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("保存定时任务失败", e);
+        }
+    }
+
+    private static void bind(PreparedStatement statement, TaskDefinition definition) throws SQLException {
+        statement.setString(1, definition.getTriggerType() == null ? null : definition.getTriggerType().name());
+        statement.setLong(2, definition.getPeriodMillis());
+        statement.setLong(3, definition.getInitialDelayMillis());
+        if (definition.getStartTime() == null) {
+            statement.setNull(4, Types.BIGINT);
+        } else {
+            statement.setLong(4, definition.getStartTime());
+        }
+        statement.setLong(5, definition.getJitterMillis());
+        statement.setString(6, definition.getCron());
+        statement.setString(7, definition.getRule());
+        statement.setString(8, definition.getGroup());
+        statement.setString(9, definition.getHandler());
+        statement.setString(10, definition.getMisfirePolicy() == null ? null : definition.getMisfirePolicy().name());
+        statement.setString(11, definition.getOverlapPolicy() == null ? null : definition.getOverlapPolicy().name());
+        if (definition.getMaxConcurrentRuns() == null) {
+            statement.setNull(12, Types.INTEGER);
+        } else {
+            statement.setInt(12, definition.getMaxConcurrentRuns());
+        }
+        statement.setInt(13, DynamicTaskStore.partitionOf(definition.getTaskId()));
+        statement.setString(14, definition.getTaskId());
+    }
+
+    @Override
+    public void delete(String taskId) {
+        executeUpdate(deleteSql, statement -> statement.setString(1, taskId));
+    }
+
+    @Override
+    public List<TaskDefinition> load(int partition) {
+        List<TaskDefinition> definitions = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(selectSql)) {
+            statement.setInt(1, partition);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    TaskDefinition definition = new TaskDefinition();
+                    definition.setTaskId(resultSet.getString("task_id"));
+                    String triggerType = resultSet.getString("trigger_type");
+                    if (triggerType != null) {
+                        definition.setTriggerType(DynamicTask.TriggerType.valueOf(triggerType));
+                    }
+                    definition.setPeriodMillis(resultSet.getLong("period_millis"));
+                    definition.setInitialDelayMillis(resultSet.getLong("initial_delay_millis"));
+                    long startTime = resultSet.getLong("start_time");
+                    definition.setStartTime(resultSet.wasNull() ? null : startTime);
+                    definition.setJitterMillis(resultSet.getLong("jitter_millis"));
+                    definition.setCron(resultSet.getString("cron"));
+                    definition.setRule(resultSet.getString("rule"));
+                    definition.setGroup(resultSet.getString("task_group"));
+                    definition.setHandler(resultSet.getString("handler"));
+                    String misfirePolicy = resultSet.getString("misfire_policy");
+                    if (misfirePolicy != null) {
+                        definition.setMisfirePolicy(DynamicTaskProperties.MisfirePolicy.valueOf(misfirePolicy));
+                    }
+                    String overlapPolicy = resultSet.getString("overlap_policy");
+                    if (overlapPolicy != null) {
+                        definition.setOverlapPolicy(DynamicTaskProperties.OverlapPolicy.valueOf(overlapPolicy));
+                    }
+                    int maxConcurrentRuns = resultSet.getInt("max_concurrent_runs");
+                    definition.setMaxConcurrentRuns(resultSet.wasNull() ? null : maxConcurrentRuns);
+                    long lastFireTime = resultSet.getLong("last_fire_time");
+                    definition.setLastFireTime(resultSet.wasNull() ? null : lastFireTime);
+                    definitions.add(definition);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("加载定时任务失败：partition = " + partition, e);
+        }
+        return definitions;
+    }
+
+    @Override
+    public void updateLastFireTime(String taskId, long lastFireTime) {
+        executeUpdate(updateFireTimeSql, statement -> {
+            statement.setLong(1, lastFireTime);
+            statement.setString(2, taskId);
+        });
+    }
+
+    private void executeUpdate(String sql, StatementBinder binder) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            binder.bind(statement);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("更新定时任务失败", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StatementBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+}
@@ -0,0 +1,131 @@
+package com.jack.utils.thread;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.BeanFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把{@link DynamicTaskMetrics}发布到Micrometer。只有引入了Micrometer时才会加载此类。
+ * <p></p>
+ * 指标名称：dynamic.task.lag、dynamic.task.queue.wait、dynamic.task.duration（timer，带有outcome = success/failure标签），
+ * dynamic.task.rejections、dynamic.task.skips（counter）。默认只带有group标签，按分组统计；
+ * 定时任务数量不多时，可以通过jack.task.metrics.per-task-tags = true增加task标签，按定时任务统计。
+ */
+class MicrometerTaskMetricsListener implements DynamicTaskMetrics.Listener {
+
+    private final MeterRegistry meterRegistry;
+    private final boolean perTaskTags;
+
+    /**
+     * 每个定时任务（或者分组）的meter，避免每次记录时都去MeterRegistry中查找。key = 任务id或者分组
+     */
+    private final ConcurrentHashMap<String, Meters> meters = new ConcurrentHashMap<>();
+
+    MicrometerTaskMetricsListener(MeterRegistry meterRegistry, boolean perTaskTags) {
+        this.meterRegistry = meterRegistry;
+        this.perTaskTags = perTaskTags;
+    }
+
+    /**
+     * @return  容器中没有MeterRegistry时返回null
+     */
+    static MicrometerTaskMetricsListener create(BeanFactory beanFactory, boolean perTaskTags) {
+        MeterRegistry meterRegistry = beanFactory.getBeanProvider(MeterRegistry.class).getIfAvailable();
+        return meterRegistry == null ? null : new MicrometerTaskMetricsListener(meterRegistry, perTaskTags);
+    }
+
+    @Override
+    public void onLag(String taskId, String group, long lagNanos) {
+        getMeters(taskId, group).lag.record(Math.max(0L, lagNanos), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onQueueWait(String taskId, String group, long waitNanos) {
+        getMeters(taskId, group).queueWait.record(Math.max(0L, waitNanos), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onExecution(String taskId, String group, long durationNanos, boolean success) {
+        Meters taskMeters = getMeters(taskId, group);
+        (success ? taskMeters.success : taskMeters.failure).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onRejection(String taskId, String group) {
+        getMeters(taskId, group).rejections.increment();
+    }
+
+    @Override
+    public void onSkip(String taskId, String group) {
+        getMeters(taskId, group).skips.increment();
+    }
+
+    @Override
+    public void onRemove(String taskId) {
+        if (!perTaskTags) {
+            return;
+        }
+
+        Meters taskMeters = meters.remove(taskId);
+        if (taskMeters != null) {
+            meterRegistry.remove(taskMeters.lag);
+            meterRegistry.remove(taskMeters.queueWait);
+            meterRegistry.remove(taskMeters.success);
+            meterRegistry.remove(taskMeters.failure);
+            meterRegistry.remove(taskMeters.rejections);
+            meterRegistry.remove(taskMeters.skips);
+        }
+    }
+
+    private Meters getMeters(String taskId, String group) {
+        String key = perTaskTags ? taskId : group;
+        Meters taskMeters = meters.get(key);
+        if (taskMeters == null) {
+            taskMeters = meters.computeIfAbsent(key, k -> new Meters(perTaskTags
+                    ? Tags.of("task", taskId, "group", group)
+                    : Tags.of("group", group)));
+        }
+        return taskMeters;
+    }
+
+    private final class Meters {
+        private final Timer lag;
+        private final Timer queueWait;
+        private final Timer success;
+        private final Timer failure;
+        private final Counter rejections;
+        private final Counter skips;
+
+        Meters(Tags tags) {
+            this.lag = Timer.builder("dynamic.task.lag")
+                    .description("实际触发时间与计划执行时间的差值")
+                    .tags(tags)
+                    .register(meterRegistry);
+            this.queueWait = Timer.builder("dynamic.task.queue.wait")
+                    .description("在线程池中等待执行的时间")
+                    .tags(tags)
+                    .register(meterRegistry);
+            this.success = Timer.builder("dynamic.task.duration")
+                    .description("业务逻辑的执行时间")
+                    .tags(tags).tag("outcome", "success")
+                    .register(meterRegistry);
+            this.failure = Timer.builder("dynamic.task.duration")
+                    .description("业务逻辑的执行时间")
+                    .tags(tags).tag("outcome", "failure")
+                    .register(meterRegistry);
+            this.rejections = Counter.builder("dynamic.task.rejections")
+                    .description("被拒绝执行的次数")
+                    .tags(tags)
+                    .register(meterRegistry);
+            this.skips = Counter.builder("dynamic.task.skips")
+                    .description("上一次执行还没有完成，被跳过或者合并的触发次数")
+                    .tags(tags)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.jack.utils.thread;
+
+import com.jack.utils.config.DynamicTaskProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 控制同一个定时任务的重叠执行。业务逻辑的执行时间超过触发周期时，避免执行不断堆积，占满线程池。
+ * <p></p>
+ * 只使用CAS维护状态，不加锁：
+ * <ul>
+ *     <li>{@link DynamicTaskProperties.OverlapPolicy#SKIP}：上一次还没有执行完，跳过本次触发</li>
+ *     <li>{@link DynamicTaskProperties.OverlapPolicy#QUEUE_ONE}：上一次还没有执行完，最多保留一次待执行的触发，
+ *     在上一次执行完后立即执行；更多的触发合并到这一次中</li>
+ *     <li>{@link DynamicTaskProperties.OverlapPolicy#CONCURRENT}：最多允许N次执行同时进行，超过的触发跳过</li>
+ * </ul>
+ * 执行被线程池丢弃时，同样会释放占用的名额。
+ */
+final class OverlapGuard {
+
+    /**
+     * {@link #release()}的返回值，表示没有待执行的触发
+     */
+    static final long NO_PENDING = Long.MIN_VALUE;
+
+    private static final int IDLE = 0;
+    private static final int RUNNING = 1;
+    private static final int RUNNING_WITH_PENDING = 2;
+
+    private final DynamicTaskProperties.OverlapPolicy policy;
+
+    /**
+     * 同时执行的最大数量，只在{@link DynamicTaskProperties.OverlapPolicy#CONCURRENT}时有效
+     */
+    private final int maxConcurrentRuns;
+
+    /**
+     * QUEUE_ONE：IDLE、RUNNING、RUNNING_WITH_PENDING；其他策略：正在执行（包括在线程池中排队）的数量
+     */
+    private final AtomicInteger state = new AtomicInteger();
+
+    /**
+     * 待执行的触发的计划执行时间，只在QUEUE_ONE时使用
+     */
+    private volatile long pendingScheduledTime;
+
+    /**
+     * @return  不需要控制重叠执行时返回null
+     */
+    static OverlapGuard of(DynamicTaskProperties.OverlapPolicy policy, int maxConcurrentRuns) {
+        if (policy == DynamicTaskProperties.OverlapPolicy.CONCURRENT && maxConcurrentRuns <= 0) {
+            return null;
+        }
+        return new OverlapGuard(policy, maxConcurrentRuns);
+    }
+
+    private OverlapGuard(DynamicTaskProperties.OverlapPolicy policy, int maxConcurrentRuns) {
+        this.policy = policy;
+        this.maxConcurrentRuns = policy == DynamicTaskProperties.OverlapPolicy.SKIP ? 1 : maxConcurrentRuns;
+    }
+
+    /**
+     * 触发时调用
+     * @param scheduledTime 本次触发的计划执行时间
+     * @return  true：可以立即执行，执行完成后需要调用{@link #release()}；false：跳过或者已经排队，不需要执行
+     */
+    boolean tryAcquire(long scheduledTime) {
+        if (policy == DynamicTaskProperties.OverlapPolicy.QUEUE_ONE) {
+            for (;;) {
+                int current = state.get();
+                if (current == IDLE) {
+                    if (state.compareAndSet(IDLE, RUNNING)) {
+                        return true;
+                    }
+                } else if (current == RUNNING) {
+                    pendingScheduledTime = scheduledTime;
+                    if (state.compareAndSet(RUNNING, RUNNING_WITH_PENDING)) {
+                        return false;
+                    }
+                } else {
+                    // 已经有待执行的触发，合并
+                    return false;
+                }
+            }
+        }
+
+        for (;;) {
+            int current = state.get();
+            if (current >= maxConcurrentRuns) {
+                return false;
+            }
+            if (state.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 执行完成（或者被丢弃）时调用
+     * @return  待执行的触发的计划执行时间，此时名额转交给这次触发，需要立即执行；没有时返回{@link #NO_PENDING}
+     */
+    long release() {
+        if (policy == DynamicTaskProperties.OverlapPolicy.QUEUE_ONE) {
+            for (;;) {
+                int current = state.get();
+                if (current == RUNNING_WITH_PENDING) {
+                    long scheduledTime = pendingScheduledTime;
+                    if (state.compareAndSet(RUNNING_WITH_PENDING, RUNNING)) {
+                        return scheduledTime;
+                    }
+                } else if (state.compareAndSet(current, IDLE)) {
+                    return NO_PENDING;
+                }
+            }
+        }
+
+        state.decrementAndGet();
+        return NO_PENDING;
+    }
+}
@@ -0,0 +1,490 @@
+package com.jack.utils.thread;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 分区并行执行的定时任务。适用于一次要处理大量数据的任务（例如每天夜间处理几百万行数据）。
+ * <p></p>
+ * 每次触发时，先把工作拆分为多个分区（按id范围或者按key列表），再在work-stealing线程池（{@link ForkJoinPool}）中并行处理各个分区，
+ * 全部分区处理完成后，通过{@link #setCompletionListener(Consumer)}汇报汇总结果。
+ * <p></p>
+ * 每个分区可以保存处理进度（checkpoint）。如果有分区失败，已经完成的分区以及失败分区已经保存的进度会被保留，
+ * 下一次触发时从进度处继续处理；全部分区成功后清除进度，下一次触发重新开始。
+ * <p></p>
+ * 使用示例：
+ * <blockquote><pre>
+ *     PartitionedTask partitionedTask = PartitionedTask.byIdRange(1, 10_000_001, 100_000, (partition, checkpoint) -> {
+ *         for (long id = checkpoint.getPosition(); id < partition.getEnd(); id += 1000) {
+ *             process(id, Math.min(id + 1000, partition.getEnd()));
+ *             checkpoint.save(Math.min(id + 1000, partition.getEnd()));
+ *         }
+ *     });
+ *     partitionedTask.setParallelism(8);
+ *     partitionedTask.setCompletionListener(result -> log.info("{}", result));
+ *
+ *     DynamicTask.TaskConstant taskConstant = new DynamicTask.TaskConstant(partitionedTask);
+ *     taskConstant.setTaskId("nightly-job");
+ *     taskConstant.setCron("0 0 2 * * ?");
+ *     dynamicTask.addTask(taskConstant);
+ * </pre></blockquote>
+ * 执行定时任务的线程只负责拆分和等待，分区的处理在单独的线程池中进行，并行度默认为CPU核数。
+ * 线程池在第一次执行时创建，各次执行共用，空闲的线程会自动退出；不再使用时调用{@link #destroy()}关闭（作为spring bean时由容器调用）。
+ * <p></p>
+ * 同一个任务id的多次执行共用进度，建议为定时任务指定重叠执行策略skip或者queue-one（参考{@link DynamicTask.TaskConstant#setOverlapPolicy}）。
+ */
+@Slf4j
+public class PartitionedTask implements Consumer<String>, DisposableBean {
+
+    /**
+     * 拆分分区。参数为任务id
+     */
+    private final Function<String, List<Partition>> splitter;
+
+    /**
+     * 处理单个分区的业务逻辑
+     */
+    private final PartitionProcessor processor;
+
+    /**
+     * 并行度。默认：CPU核数
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 处理分区的线程池，第一次执行时创建
+     */
+    private ForkJoinPool pool;
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    /**
+     * 进度的存储。默认保存在内存中，应用重启后丢失；需要跨重启保留时，可以使用{@link RedisCheckpointStore}
+     */
+    private CheckpointStore checkpointStore = new InMemoryCheckpointStore();
+
+    /**
+     * 全部分区处理完成（包括失败）后回调
+     */
+    private Consumer<PartitionedResult> completionListener;
+
+    /**
+     * 正在执行的各次执行的进度。允许重叠执行时，每次执行单独统计
+     */
+    private final Set<RunProgress> runningProgresses = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 最近一次开始的执行的进度
+     */
+    private volatile RunProgress latestProgress;
+
+    /**
+     * @param splitter  拆分分区，参数为任务id。每次触发时调用，可以在其中查询最新的数据范围
+     * @param processor 处理单个分区的业务逻辑
+     */
+    public PartitionedTask(Function<String, List<Partition>> splitter, PartitionProcessor processor) {
+        Assert.notNull(splitter, "splitter can not be null");
+        Assert.notNull(processor, "processor can not be null");
+        this.splitter = splitter;
+        this.processor = processor;
+    }
+
+    /**
+     * 按id范围拆分分区
+     * @param fromInclusive 起始id（包含）
+     * @param toExclusive   结束id（不包含）
+     * @param partitionSize 每个分区的id数量
+     * @param processor     处理单个分区的业务逻辑，分区的范围为[{@link Partition#getStart()}, {@link Partition#getEnd()})
+     */
+    public static PartitionedTask byIdRange(long fromInclusive, long toExclusive, long partitionSize, PartitionProcessor processor) {
+        Assert.isTrue(partitionSize > 0, "partitionSize must be greater than 0");
+        return new PartitionedTask(taskId -> {
+            List<Partition> partitions = new ArrayList<>();
+            for (long start = fromInclusive; start < toExclusive; start += partitionSize) {
+                partitions.add(new Partition(partitions.size(), start, Math.min(start + partitionSize, toExclusive), null));
+            }
+            return partitions;
+        }, processor);
+    }
+
+    /**
+     * 按key列表拆分分区
+     * @param keysSupplier  每次触发时获取key列表
+     * @param partitionSize 每个分区的key数量
+     * @param processor     处理单个分区的业务逻辑，分区中的key为{@link Partition#getKeys()}，进度为key的下标
+     */
+    public static PartitionedTask byKeys(Supplier<List<String>> keysSupplier, int partitionSize, PartitionProcessor processor) {
+        Assert.isTrue(partitionSize > 0, "partitionSize must be greater than 0");
+        return new PartitionedTask(taskId -> {
+            List<String> keys = keysSupplier.get();
+            List<Partition> partitions = new ArrayList<>();
+            for (int start = 0; start < keys.size(); start += partitionSize) {
+                List<String> partitionKeys = new ArrayList<>(keys.subList(start, Math.min(start + partitionSize, keys.size())));
+                partitions.add(new Partition(partitions.size(), 0, partitionKeys.size(), partitionKeys));
+            }
+            return partitions;
+        }, processor);
+    }
+
+    public synchronized void setParallelism(int parallelism) {
+        Assert.isTrue(parallelism > 0, "parallelism must be greater than 0");
+        this.parallelism = parallelism;
+        // 下一次执行时按新的并行度创建线程池。原有的线程池不关闭，正在进行的执行仍然可以使用，空闲之后线程自动退出
+        this.pool = null;
+    }
+
+    public void setCheckpointStore(CheckpointStore checkpointStore) {
+        Assert.notNull(checkpointStore, "checkpointStore can not be null");
+        this.checkpointStore = checkpointStore;
+    }
+
+    public void setCompletionListener(Consumer<PartitionedResult> completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    /**
+     * 最近一次开始的执行的进度
+     * @return  [0, 1]。没有在执行时返回上一次执行结束时的进度
+     */
+    public double getProgress() {
+        RunProgress progress = latestProgress;
+        return progress == null ? 0D : progress.get();
+    }
+
+    /**
+     * 正在执行的各次执行的进度，按开始时间排序。允许重叠执行时可能有多个
+     * @return  [0, 1]。没有在执行时返回空列表
+     */
+    public List<Double> getRunningProgress() {
+        List<RunProgress> progresses = new ArrayList<>(runningProgresses);
+        progresses.sort(Comparator.comparingLong(progress -> progress.startNanos));
+        List<Double> result = new ArrayList<>(progresses.size());
+        progresses.forEach(progress -> result.add(progress.get()));
+        return result;
+    }
+
+    @Override
+    public void accept(String taskId) {
+        long start = System.currentTimeMillis();
+        List<Partition> partitions = splitter.apply(taskId);
+        String signature = signature(partitions);
+        if (!signature.equals(checkpointStore.loadSignature(taskId))) {
+            // 分区发生了变化，之前的进度不再有效
+            checkpointStore.clear(taskId);
+            checkpointStore.saveSignature(taskId, signature);
+        }
+
+        Map<Integer, Long> checkpoints = checkpointStore.load(taskId);
+        PartitionedResult result = new PartitionedResult();
+        result.setTaskId(taskId);
+        result.setTotalPartitions(partitions.size());
+        RunProgress progress = new RunProgress(partitions.size());
+        this.latestProgress = progress;
+        runningProgresses.add(progress);
+        try {
+            run(taskId, partitions, checkpoints, result, progress);
+        } finally {
+            runningProgresses.remove(progress);
+        }
+        result.setDurationMillis(System.currentTimeMillis() - start);
+        if (result.isSuccess()) {
+            checkpointStore.clear(taskId);
+            log.info("分区执行定时任务完成：{}", result);
+        } else {
+            log.error("分区执行定时任务有{}个分区失败，下一次触发时从进度处继续：{}", result.getFailedPartitions(), result);
+        }
+
+        if (completionListener != null) {
+            completionListener.accept(result);
+        }
+    }
+
+    private void run(String taskId, List<Partition> partitions, Map<Integer, Long> checkpoints,
+                     PartitionedResult result, RunProgress progress) {
+
+        List<Partition> pending = new ArrayList<>(partitions.size());
+        for (Partition partition : partitions) {
+            Long position = checkpoints.get(partition.getIndex());
+            if (position != null && position >= partition.getEnd()) {
+                result.setSkippedPartitions(result.getSkippedPartitions() + 1);
+                progress.completed.incrementAndGet();
+            } else {
+                pending.add(partition);
+            }
+        }
+
+        log.info("开始分区执行定时任务：taskId = {}，分区数量 = {}，已完成 = {}，并行度 = {}",
+                taskId, partitions.size(), result.getSkippedPartitions(), parallelism);
+        Map<Integer, String> failures = new ConcurrentHashMap<>();
+        if (!pending.isEmpty()) {
+            getPool().invoke(new PartitionAction(taskId, pending, 0, pending.size(), checkpoints, failures, progress));
+        }
+
+        result.setFailedPartitions(failures.size());
+        result.setCompletedPartitions(progress.completed.get() - result.getSkippedPartitions());
+        result.setFailures(new TreeMap<>(failures));
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                thread.setName("partitioned-task-" + threadNumber.incrementAndGet());
+                return thread;
+            }, null, false);
+        }
+        return pool;
+    }
+
+    /**
+     * 关闭线程池，正在处理的分区会继续完成
+     */
+    @Override
+    public synchronized void destroy() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    private static String signature(List<Partition> partitions) {
+        long hash = partitions.size();
+        for (Partition partition : partitions) {
+            hash = hash * 31 + partition.getStart();
+            hash = hash * 31 + partition.getEnd();
+            hash = hash * 31 + (partition.getKeys() == null ? 0 : partition.getKeys().hashCode());
+        }
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * 二分拆分分区列表，叶子节点处理单个分区，空闲的线程会窃取其他线程的子任务
+     */
+    private final class PartitionAction extends RecursiveAction {
+        private final String taskId;
+        private final List<Partition> partitions;
+        private final int from;
+        private final int to;
+        private final Map<Integer, Long> checkpoints;
+        private final Map<Integer, String> failures;
+        private final RunProgress progress;
+
+        PartitionAction(String taskId, List<Partition> partitions, int from, int to,
+                        Map<Integer, Long> checkpoints, Map<Integer, String> failures, RunProgress progress) {
+            this.taskId = taskId;
+            this.partitions = partitions;
+            this.from = from;
+            this.to = to;
+            this.checkpoints = checkpoints;
+            this.failures = failures;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new PartitionAction(taskId, partitions, from, mid, checkpoints, failures, progress),
+                        new PartitionAction(taskId, partitions, mid, to, checkpoints, failures, progress));
+                return;
+            }
+
+            Partition partition = partitions.get(from);
+            Long position = checkpoints.get(partition.getIndex());
+            Checkpoint checkpoint = new Checkpoint(taskId, partition, position == null ? partition.getStart() : position);
+            try {
+                processor.process(partition, checkpoint);
+                checkpoint.save(partition.getEnd());
+                progress.completed.incrementAndGet();
+            } catch (Throwable e) {
+                log.error("分区处理失败：taskId = {}，partition = {}，position = {}", taskId, partition.getIndex(), checkpoint.getPosition(), e);
+                failures.put(partition.getIndex(), String.valueOf(e));
+            }
+        }
+    }
+
+    /**
+     * 一次执行的进度：已经处理完成的分区数量、总分区数量
+     */
+    private static final class RunProgress {
+        private final long startNanos = System.nanoTime();
+        private final int totalPartitions;
+        private final AtomicInteger completed = new AtomicInteger();
+
+        RunProgress(int totalPartitions) {
+            this.totalPartitions = totalPartitions;
+        }
+
+        double get() {
+            return totalPartitions == 0 ? 0D : (double) completed.get() / totalPartitions;
+        }
+    }
+
+    /**
+     * 处理单个分区的业务逻辑
+     */
+    @FunctionalInterface
+    public interface PartitionProcessor {
+        /**
+         * @param partition     分区
+         * @param checkpoint    分区的进度，从{@link Checkpoint#getPosition()}处开始处理，并且定期调用{@link Checkpoint#save(long)}
+         */
+        void process(Partition partition, Checkpoint checkpoint) throws Exception;
+    }
+
+    @Data
+    public static class Partition {
+        /**
+         * 分区序号，从0开始
+         */
+        private final int index;
+        /**
+         * 起始位置（包含）。按id范围拆分时为起始id，按key列表拆分时为0
+         */
+        private final long start;
+        /**
+         * 结束位置（不包含）。按id范围拆分时为结束id，按key列表拆分时为key的数量
+         */
+        private final long end;
+        /**
+         * 分区中的key，按id范围拆分时为null
+         */
+        private final List<String> keys;
+    }
+
+    /**
+     * 分区的进度
+     */
+    public final class Checkpoint {
+        private final String taskId;
+        private final Partition partition;
+        private volatile long position;
+
+        private Checkpoint(String taskId, Partition partition, long position) {
+            this.taskId = taskId;
+            this.partition = partition;
+            this.position = position;
+        }
+
+        /**
+         * @return  应该从此位置开始处理。首次处理时等于{@link Partition#getStart()}
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * 保存进度
+         * @param position  此位置之前的数据已经处理完成
+         */
+        public void save(long position) {
+            this.position = position;
+            checkpointStore.save(taskId, partition.getIndex(), position);
+        }
+    }
+
+    /**
+     * 进度的存储
+     */
+    public interface CheckpointStore {
+        /**
+         * @return  key = 分区序号，value = 进度
+         */
+        Map<Integer, Long> load(String taskId);
+
+        void save(String taskId, int partition, long position);
+
+        /**
+         * 清除全部分区的进度
+         */
+        void clear(String taskId);
+
+        /**
+         * 分区的签名，分区发生变化时之前的进度不再有效
+         */
+        String loadSignature(String taskId);
+
+        void saveSignature(String taskId, String signature);
+    }
+
+    /**
+     * 保存在内存中的进度
+     */
+    public static class InMemoryCheckpointStore implements CheckpointStore {
+        private final ConcurrentHashMap<String, Map<Integer, Long>> checkpoints = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, String> signatures = new ConcurrentHashMap<>();
+
+        @Override
+        public Map<Integer, Long> load(String taskId) {
+            return new HashMap<>(checkpoints.getOrDefault(taskId, Collections.emptyMap()));
+        }
+
+        @Override
+        public void save(String taskId, int partition, long position) {
+            checkpoints.computeIfAbsent(taskId, key -> new ConcurrentHashMap<>()).put(partition, position);
+        }
+
+        @Override
+        public void clear(String taskId) {
+            checkpoints.remove(taskId);
+        }
+
+        @Override
+        public String loadSignature(String taskId) {
+            return signatures.get(taskId);
+        }
+
+        @Override
+        public void saveSignature(String taskId, String signature) {
+            signatures.put(taskId, signature);
+        }
+    }
+
+    /**
+     * 一次触发的汇总结果
+     */
+    @Data
+    public static class PartitionedResult {
+        private String taskId;
+        /**
+         * 总分区数量
+         */
+        private int totalPartitions;
+        /**
+         * 本次处理完成的分区数量
+         */
+        private int completedPartitions;
+        /**
+         * 之前已经处理完成，本次跳过的分区数量
+         */
+        private int skippedPartitions;
+        /**
+         * 失败的分区数量
+         */
+        private int failedPartitions;
+        /**
+         * 失败的原因。key = 分区序号
+         */
+        private Map<Integer, String> failures;
+        /**
+         * 耗时，单位：毫秒
+         */
+        private long durationMillis;
+
+        public boolean isSuccess() {
+            return failedPartitions == 0;
+        }
+    }
+}
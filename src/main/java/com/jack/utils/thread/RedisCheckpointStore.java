@@ -0,0 +1,74 @@
+package com.jack.utils.thread;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 保存在redis中的分区进度（参考{@link PartitionedTask}），应用重启后仍然有效，集群中的各个节点也可以共享。
+ * <p></p>
+ * 每个定时任务对应一个hash：{keyPrefix}{taskId}，field为分区序号，value为进度；签名保存在field = signature中。
+ */
+public class RedisCheckpointStore implements PartitionedTask.CheckpointStore {
+
+    private static final String SIGNATURE_FIELD = "signature";
+
+    /**
+     * 删除签名以外的全部field，一次往返完成，与其他节点的保存不会交错
+     */
+    private static final RedisScript<Long> CLEAR_SCRIPT = new DefaultRedisScript<>(
+            "local deleted = 0 " +
+            "for _, field in ipairs(redis.call('hkeys', KEYS[1])) do " +
+            "if field ~= ARGV[1] then deleted = deleted + redis.call('hdel', KEYS[1], field) end " +
+            "end " +
+            "return deleted",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+
+    public RedisCheckpointStore(RedisConnectionFactory redisConnectionFactory) {
+        this(redisConnectionFactory, "jack:task:checkpoint:");
+    }
+
+    public RedisCheckpointStore(RedisConnectionFactory redisConnectionFactory, String keyPrefix) {
+        this.redisTemplate = new StringRedisTemplate(redisConnectionFactory);
+        this.keyPrefix = keyPrefix;
+    }
+
+    @Override
+    public Map<Integer, Long> load(String taskId) {
+        Map<Integer, Long> checkpoints = new HashMap<>();
+        redisTemplate.<String, String>opsForHash().entries(keyPrefix + taskId).forEach((field, value) -> {
+            if (!SIGNATURE_FIELD.equals(field)) {
+                checkpoints.put(Integer.valueOf(field), Long.valueOf(value));
+            }
+        });
+        return checkpoints;
+    }
+
+    @Override
+    public void save(String taskId, int partition, long position) {
+        redisTemplate.opsForHash().put(keyPrefix + taskId, String.valueOf(partition), String.valueOf(position));
+    }
+
+    @Override
+    public void clear(String taskId) {
+        redisTemplate.execute(CLEAR_SCRIPT, Collections.singletonList(keyPrefix + taskId), SIGNATURE_FIELD);
+    }
+
+    @Override
+    public String loadSignature(String taskId) {
+        return redisTemplate.<String, String>opsForHash().get(keyPrefix + taskId, SIGNATURE_FIELD);
+    }
+
+    @Override
+    public void saveSignature(String taskId, String signature) {
+        redisTemplate.opsForHash().put(keyPrefix + taskId, SIGNATURE_FIELD, signature);
+    }
+}
@@ -0,0 +1,117 @@
+package com.jack.utils.thread;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SimplePropertyPreFilter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.*;
+
+/**
+ * 基于redis的定时任务存储。
+ * <p></p>
+ * 每个分区对应两个hash：{keyPrefix}tasks:{partition}保存定时任务（json），{keyPrefix}fire:{partition}保存最后一次触发时间。
+ */
+public class RedisDynamicTaskStore implements DynamicTaskStore {
+
+    /**
+     * 每条HMSET最多包含的定时任务数量
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * 保存定时任务时不包含最后一次触发时间，它单独保存在{keyPrefix}fire:{partition}中
+     */
+    private static final SimplePropertyPreFilter DEFINITION_FILTER = new SimplePropertyPreFilter();
+
+    static {
+        DEFINITION_FILTER.getExcludes().add("lastFireTime");
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+
+    public RedisDynamicTaskStore(RedisConnectionFactory redisConnectionFactory, String keyPrefix) {
+        this.redisTemplate = new StringRedisTemplate(redisConnectionFactory);
+        this.keyPrefix = keyPrefix;
+    }
+
+    @Override
+    public void save(TaskDefinition definition) {
+        saveAll(Collections.singletonList(definition));
+    }
+
+    /**
+     * 所有命令在一个pipeline中发送：每个分区按{@value #BATCH_SIZE}个一批HMSET，最后一次触发时间逐个HSETNX
+     */
+    @Override
+    public void saveAll(Collection<TaskDefinition> definitions) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        Map<Integer, Map<byte[], byte[]>> partitionMap = new HashMap<>();
+        for (TaskDefinition definition : definitions) {
+            partitionMap.computeIfAbsent(DynamicTaskStore.partitionOf(definition.getTaskId()), key -> new LinkedHashMap<>())
+                    .put(serializer.serialize(definition.getTaskId()), serializer.serialize(JSON.toJSONString(definition, DEFINITION_FILTER)));
+        }
+
+        byte[] now = serializer.serialize(String.valueOf(System.currentTimeMillis()));
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            partitionMap.forEach((partition, taskMap) -> {
+                byte[] tasksKey = serializer.serialize(tasksKey(partition));
+                byte[] fireKey = serializer.serialize(fireKey(partition));
+                Map<byte[], byte[]> batch = new LinkedHashMap<>();
+                for (Map.Entry<byte[], byte[]> entry : taskMap.entrySet()) {
+                    batch.put(entry.getKey(), entry.getValue());
+                    if (batch.size() == BATCH_SIZE) {
+                        connection.hashCommands().hMSet(tasksKey, batch);
+                        batch = new LinkedHashMap<>();
+                    }
+                    // 新增的定时任务从当前时间开始计算错过的触发
+                    connection.hashCommands().hSetNX(fireKey, entry.getKey(), now);
+                }
+                if (!batch.isEmpty()) {
+                    connection.hashCommands().hMSet(tasksKey, batch);
+                }
+            });
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(String taskId) {
+        int partition = DynamicTaskStore.partitionOf(taskId);
+        redisTemplate.opsForHash().delete(tasksKey(partition), taskId);
+        redisTemplate.opsForHash().delete(fireKey(partition), taskId);
+    }
+
+    @Override
+    public List<TaskDefinition> load(int partition) {
+        Map<Object, Object> taskMap = redisTemplate.opsForHash().entries(tasksKey(partition));
+        Map<Object, Object> fireMap = redisTemplate.opsForHash().entries(fireKey(partition));
+
+        List<TaskDefinition> definitions = new ArrayList<>(taskMap.size());
+        taskMap.forEach((taskId, json) -> {
+            TaskDefinition definition = JSON.parseObject((String) json, TaskDefinition.class);
+            Object lastFireTime = fireMap.get(taskId);
+            if (lastFireTime != null) {
+                definition.setLastFireTime(Long.valueOf((String) lastFireTime));
+            }
+            definitions.add(definition);
+        });
+        return definitions;
+    }
+
+    @Override
+    public void updateLastFireTime(String taskId, long lastFireTime) {
+        redisTemplate.opsForHash().put(fireKey(DynamicTaskStore.partitionOf(taskId)), taskId, String.valueOf(lastFireTime));
+    }
+
+    private String tasksKey(int partition) {
+        return keyPrefix + "tasks:" + partition;
+    }
+
+    private String fireKey(int partition) {
+        return keyPrefix + "fire:" + partition;
+    }
+}
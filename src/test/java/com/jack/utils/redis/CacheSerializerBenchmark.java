@@ -0,0 +1,111 @@
+package com.jack.utils.redis;
+
+import com.jack.utils.config.RedisProperties;
+import lombok.Data;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis缓存值序列化方式的基准测试：json vs smile vs jdk。
+ * <p></p>
+ * 缓存值为单个实体（single）和100个实体的列表（list，模拟分页查询的结果），分别测量序列化和反序列化的吞吐量。
+ * 序列化之后的大小在运行前输出。在IDE中直接运行main方法即可。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheSerializerBenchmark {
+
+    @Param({"JSON", "SMILE", "JDK"})
+    private RedisProperties.SerializerType serializerType;
+
+    @Param({"single", "list"})
+    private String payload;
+
+    private RedisSerializer<Object> serializer;
+    private Object value;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        serializer = CacheValueSerializers.create(serializerType);
+        value = createPayload(payload);
+        bytes = serializer.serialize(value);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(bytes);
+    }
+
+    private static Object createPayload(String payload) {
+        if ("single".equals(payload)) {
+            return newBook(1);
+        }
+
+        List<Book> books = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            books.add(newBook(i));
+        }
+        return books;
+    }
+
+    private static Book newBook(int id) {
+        Book book = new Book();
+        book.setId((long) id);
+        book.setName("深入理解Java虚拟机（第" + id + "版）");
+        book.setAuthor("author-" + (id % 10));
+        book.setIsbn("978-7-111-" + (100000 + id));
+        book.setPrice(new BigDecimal("129.00").add(BigDecimal.valueOf(id)));
+        book.setStock(id * 7);
+        book.setOnSale(id % 2 == 0);
+        book.setPublishDate(new Date(1_600_000_000_000L + id * 86_400_000L));
+        book.setTags(Arrays.asList("java", "jvm", "tag-" + (id % 5)));
+        return book;
+    }
+
+    @Data
+    public static class Book implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long id;
+        private String name;
+        private String author;
+        private String isbn;
+        private BigDecimal price;
+        private Integer stock;
+        private Boolean onSale;
+        private Date publishDate;
+        private List<String> tags;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (RedisProperties.SerializerType type : RedisProperties.SerializerType.values()) {
+            RedisSerializer<Object> serializer = CacheValueSerializers.create(type);
+            System.out.printf("%-6s single = %6d bytes, list = %6d bytes%n", type,
+                    serializer.serialize(createPayload("single")).length, serializer.serialize(createPayload("list")).length);
+        }
+
+        Options options = new OptionsBuilder()
+                .include(CacheSerializerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,89 @@
+package com.jack.utils.redis;
+
+import com.jack.utils.config.RedisProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompressingRedisSerializerTest {
+
+    private static final int THRESHOLD = 256;
+
+    @ParameterizedTest
+    @EnumSource(RedisProperties.SerializerType.class)
+    void smallValueIsStoredAsIs(RedisProperties.SerializerType type) {
+        RedisSerializer<Object> delegate = CacheValueSerializers.create(type);
+        CompressingRedisSerializer serializer = new CompressingRedisSerializer(delegate, THRESHOLD);
+        List<String> value = new ArrayList<>(Arrays.asList("a", "b"));
+
+        byte[] bytes = serializer.serialize(value);
+
+        assertThat(bytes).isEqualTo(delegate.serialize(value));
+        assertThat(serializer.deserialize(bytes)).isEqualTo(value);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RedisProperties.SerializerType.class)
+    void largeValueIsCompressedWithHeader(RedisProperties.SerializerType type) {
+        RedisSerializer<Object> delegate = CacheValueSerializers.create(type);
+        CompressingRedisSerializer serializer = new CompressingRedisSerializer(delegate, THRESHOLD);
+        List<String> value = largeValue();
+
+        byte[] bytes = serializer.serialize(value);
+
+        assertThat(bytes[0]).isEqualTo(CompressingRedisSerializer.COMPRESSED);
+        assertThat(bytes.length).isLessThan(delegate.serialize(value).length);
+        assertThat(serializer.deserialize(bytes)).isEqualTo(value);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RedisProperties.SerializerType.class)
+    void readsValuesWrittenWithoutCompression(RedisProperties.SerializerType type) {
+        RedisSerializer<Object> delegate = CacheValueSerializers.create(type);
+        CompressingRedisSerializer serializer = new CompressingRedisSerializer(delegate, THRESHOLD);
+        List<String> value = largeValue();
+
+        // 开启压缩之前保存的缓存值
+        byte[] plain = delegate.serialize(value);
+
+        assertThat(plain[0]).isNotEqualTo(CompressingRedisSerializer.COMPRESSED);
+        assertThat(serializer.deserialize(plain)).isEqualTo(value);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RedisProperties.SerializerType.class)
+    void compressedValueIsReadableAfterThresholdChange(RedisProperties.SerializerType type) {
+        RedisSerializer<Object> delegate = CacheValueSerializers.create(type);
+        List<String> value = largeValue();
+
+        byte[] compressed = new CompressingRedisSerializer(delegate, THRESHOLD).serialize(value);
+
+        assertThat(new CompressingRedisSerializer(delegate, Integer.MAX_VALUE).deserialize(compressed)).isEqualTo(value);
+    }
+
+    @Test
+    void truncatedValueIsRejected() {
+        CompressingRedisSerializer serializer = new CompressingRedisSerializer(CacheValueSerializers.json(), THRESHOLD);
+        byte[] compressed = serializer.serialize(largeValue());
+
+        assertThatThrownBy(() -> serializer.deserialize(Arrays.copyOf(compressed, compressed.length / 2)))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    private static List<String> largeValue() {
+        List<String> value = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            value.add("book-" + (i % 10) + "-description");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,105 @@
+package com.jack.utils.redis;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 需要本地的redis（localhost:6379），连接不上时跳过
+ */
+class SegmentIdGeneratorTest {
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    private final String redisKey = "jack:id:test:" + UUID.randomUUID();
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", 6379));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        boolean available;
+        try {
+            available = "PONG".equals(redisTemplate.execute(connection -> connection.ping(), true));
+        } catch (Exception e) {
+            available = false;
+        }
+        assumeTrue(available, "redis is not available on localhost:6379");
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @AfterEach
+    void deleteKey() {
+        redisTemplate.delete(redisKey);
+    }
+
+    @Test
+    void continuesFromExistingCounter() {
+        redisTemplate.opsForValue().set(redisKey, "1000");
+        SegmentIdGenerator generator = new SegmentIdGenerator(connectionFactory, redisKey, 10, 0.8D);
+
+        for (long expected = 1001; expected <= 1025; expected++) {
+            assertThat(generator.nextId()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void idsAreUniqueWhenSegmentsSwitchUnderContention() throws Exception {
+        // 两个节点共用一个计数器，每个号段很小，频繁切换
+        SegmentIdGenerator node1 = new SegmentIdGenerator(connectionFactory, redisKey, 50, 0.5D);
+        SegmentIdGenerator node2 = new SegmentIdGenerator(connectionFactory, redisKey, 50, 0.5D);
+        int threads = 16;
+        int idsPerThread = 5000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                SegmentIdGenerator generator = t % 2 == 0 ? node1 : node2;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < idsPerThread; i++) {
+                        assertThat(ids.add(generator.nextId())).isTrue();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(ids).hasSize(threads * idsPerThread);
+        long max = Long.parseLong(redisTemplate.opsForValue().get(redisKey));
+        assertThat(ids).allSatisfy(id -> assertThat(id).isBetween(1L, max));
+        // 每个节点最多浪费当前号段的剩余部分和预取的下一个号段
+        assertThat(max).isLessThanOrEqualTo(threads * idsPerThread + 2 * 2 * 50L);
+    }
+}
@@ -0,0 +1,211 @@
+package com.jack.utils.redis;
+
+import com.jack.utils.config.RedisProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimpleKeyGeneratorTest {
+
+    private final SimpleKeyGenerator keyGenerator = new SimpleKeyGenerator(RedisProperties.KeyGeneratorMode.COMPACT);
+
+    @Test
+    void compactKeyIsStable() throws NoSuchMethodException {
+        Method method = BookService.class.getMethod("getById", Long.class);
+
+        // 各个节点、每次启动都要得到相同的key，摘要不能依赖hashCode等运行时的值
+        assertThat(SimpleKeyGenerator.generateCompactKey(BookService.class, method, 42L))
+                .isEqualTo("BookService.getById~3ngtwv9q6x4wv:42");
+        assertThat(SimpleKeyGenerator.generateCompactKey(BookService.class, method, new Query("java", 1)))
+                .isEqualTo(SimpleKeyGenerator.generateCompactKey(BookService.class, method, new Query("java", 1)));
+    }
+
+    @Test
+    void plainParamsAreKept() throws NoSuchMethodException {
+        Method method = BookService.class.getMethod("search", String.class, int.class, Boolean.class);
+
+        assertThat(SimpleKeyGenerator.generateCompactKey(BookService.class, method, "java", 2, null))
+                .endsWith(":java:2:~");
+        assertThat(SimpleKeyGenerator.generateCompactKey(BookService.class, method, "~", 2, true))
+                .doesNotEndWith(":~:2:true");
+    }
+
+    @Test
+    void overloadsAndClassesDoNotCollide() throws NoSuchMethodException {
+        String byId = SimpleKeyGenerator.generateCompactKey(BookService.class,
+                BookService.class.getMethod("getById", Long.class), 42L);
+        String byIdOverload = SimpleKeyGenerator.generateCompactKey(BookService.class,
+                BookService.class.getMethod("getById", String.class), "42");
+        String otherClass = SimpleKeyGenerator.generateCompactKey(AuthorService.class,
+                AuthorService.class.getMethod("getById", Long.class), 42L);
+
+        assertThat(Arrays.asList(byId, byIdOverload, otherClass)).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void scalarsOfDifferentTypesDoNotCollide() throws NoSuchMethodException {
+        Method method = BookService.class.getMethod("get", Object.class);
+
+        List<String> keys = Stream.of("1", 1, 1L, (short) 1, new BigDecimal("1"), new Date(1L),
+                        "true", Boolean.TRUE, "A", Level.A, OtherLevel.A)
+                .map(param -> SimpleKeyGenerator.generateCompactKey(BookService.class, method, param))
+                .collect(Collectors.toList());
+
+        assertThat(keys).doesNotHaveDuplicates();
+        assertThat(keys.get(0)).endsWith(":s1");
+        assertThat(keys.get(1)).endsWith(":i1");
+        assertThat(keys.get(2)).endsWith(":l1");
+    }
+
+    @Test
+    void declaredTypeNeedsNoTag() throws NoSuchMethodException {
+        assertThat(SimpleKeyGenerator.generateCompactKey(BookService.class,
+                BookService.class.getMethod("findByLevel", Level.class), Level.A)).endsWith(":A");
+        assertThat(SimpleKeyGenerator.generateCompactKey(BookService.class,
+                BookService.class.getMethod("findByDate", Date.class), new Date(1L))).endsWith(":1");
+    }
+
+    @Test
+    void inheritedMethodUsesTargetClass() throws NoSuchMethodException {
+        Method method = BaseService.class.getMethod("findAll");
+
+        String books = (String) keyGenerator.generate(new BookService(), method);
+        String authors = (String) keyGenerator.generate(new AuthorService(), method);
+
+        assertThat(books).startsWith("BookService.findAll~");
+        assertThat(authors).startsWith("AuthorService.findAll~");
+    }
+
+    @Test
+    void proxyUsesTargetClass() throws NoSuchMethodException {
+        Method method = BookService.class.getMethod("getById", Long.class);
+        ProxyFactory proxyFactory = new ProxyFactory(new BookService());
+        proxyFactory.setProxyTargetClass(true);
+
+        assertThat(keyGenerator.generate(proxyFactory.getProxy(), method, 42L))
+                .isEqualTo(SimpleKeyGenerator.generateCompactKey(BookService.class, method, 42L));
+    }
+
+    @Test
+    void paramsWithoutGettersAreDigestedByFields() throws NoSuchMethodException {
+        Method method = BookService.class.getMethod("find", Query.class);
+
+        String java = SimpleKeyGenerator.generateCompactKey(BookService.class, method, new Query("java", 1));
+        String javaPage2 = SimpleKeyGenerator.generateCompactKey(BookService.class, method, new Query("java", 2));
+        String go = SimpleKeyGenerator.generateCompactKey(BookService.class, method, new Query("go", 1));
+
+        assertThat(Arrays.asList(java, javaPage2, go)).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void mapsWithSameEntriesHaveSameKey() throws NoSuchMethodException {
+        Method method = BookService.class.getMethod("findByConditions", Map.class);
+        Map<String, Object> hashMap = new HashMap<>();
+        hashMap.put("b", 2);
+        hashMap.put("a", 1);
+        Map<String, Object> linkedHashMap = new LinkedHashMap<>();
+        linkedHashMap.put("a", 1);
+        linkedHashMap.put("b", 2);
+
+        assertThat(SimpleKeyGenerator.generateCompactKey(BookService.class, method, hashMap))
+                .isEqualTo(SimpleKeyGenerator.generateCompactKey(BookService.class, method, linkedHashMap));
+    }
+
+    @Test
+    void longArgsAreBounded() throws NoSuchMethodException {
+        Method method = BookService.class.getMethod("search", String.class, int.class, Boolean.class);
+        String prefix = SimpleKeyGenerator.generateCompactKey(BookService.class, method);
+
+        String key1 = SimpleKeyGenerator.generateCompactKey(BookService.class, method, repeat('a', 32), 1, true);
+        String key2 = SimpleKeyGenerator.generateCompactKey(BookService.class, method, repeat('a', 32), 2, true);
+        String longKey = SimpleKeyGenerator.generateCompactKey(BookService.class, method, repeat('a', 10_000), 1, true);
+
+        assertThat(key1).isNotEqualTo(key2);
+        assertThat(longKey.length() - prefix.length()).isLessThanOrEqualTo(128);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    static class BaseService {
+        public Object findAll() {
+            return null;
+        }
+    }
+
+    static class BookService extends BaseService {
+        public Object getById(Long id) {
+            return null;
+        }
+
+        public Object getById(String isbn) {
+            return null;
+        }
+
+        public Object search(String keyword, int page, Boolean available) {
+            return null;
+        }
+
+        public Object find(Query query) {
+            return null;
+        }
+
+        public Object findByConditions(Map<String, Object> conditions) {
+            return null;
+        }
+
+        public Object get(Object id) {
+            return null;
+        }
+
+        public Object findByLevel(Level level) {
+            return null;
+        }
+
+        public Object findByDate(Date date) {
+            return null;
+        }
+    }
+
+    enum Level {
+        A
+    }
+
+    enum OtherLevel {
+        A
+    }
+
+    static class AuthorService extends BaseService {
+        public Object getById(Long id) {
+            return null;
+        }
+    }
+
+    /**
+     * 没有getter的查询参数
+     */
+    static class Query {
+        private final String keyword;
+        private final int page;
+
+        Query(String keyword, int page) {
+            this.keyword = keyword;
+            this.page = page;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.jack.utils.redis;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlidingCountMinSketchTest {
+
+    private static final long WINDOW_MILLIS = 60_000L;
+
+    @Test
+    void emptySketchEstimatesZero() {
+        SlidingCountMinSketch sketch = new SlidingCountMinSketch(1024, WINDOW_MILLIS, 6);
+
+        assertThat(sketch.estimate(hash("key"))).isZero();
+    }
+
+    @Test
+    void incrementReturnsEstimate() {
+        SlidingCountMinSketch sketch = new SlidingCountMinSketch(1024, WINDOW_MILLIS, 6);
+
+        for (int i = 1; i <= 10; i++) {
+            assertThat(sketch.increment(hash("key"))).isEqualTo(i);
+        }
+        assertThat(sketch.estimate(hash("key"))).isEqualTo(10);
+    }
+
+    @Test
+    void neverUnderestimatesAndKeepsHotKeyAccurate() {
+        SlidingCountMinSketch sketch = new SlidingCountMinSketch(1024, WINDOW_MILLIS, 6);
+        Random random = new Random(42);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            String key = "key-" + random.nextInt(2000);
+            sketch.increment(hash(key));
+            counts.merge(key, 1, Integer::sum);
+        }
+        for (int i = 0; i < 5000; i++) {
+            sketch.increment(hash("hot"));
+        }
+
+        counts.forEach((key, count) -> assertThat(sketch.estimate(hash(key))).isGreaterThanOrEqualTo(count));
+        // 其他key的计数只会让估计值偏大一点，热点key仍然明显高于其他key
+        assertThat(sketch.estimate(hash("hot"))).isBetween(5000, 5100);
+    }
+
+    @Test
+    void countsExpireWithWindow() throws InterruptedException {
+        SlidingCountMinSketch sketch = new SlidingCountMinSketch(1024, 200L, 4);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment(hash("key"));
+        }
+        assertThat(sketch.estimate(hash("key"))).isEqualTo(10);
+
+        TimeUnit.MILLISECONDS.sleep(300L);
+
+        assertThat(sketch.estimate(hash("key"))).isZero();
+    }
+
+    private static long[] hash(String key) {
+        return Murmur3.hash128(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
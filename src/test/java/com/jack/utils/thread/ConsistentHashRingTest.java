@@ -0,0 +1,78 @@
+package com.jack.utils.thread;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 100_000;
+
+    @Test
+    void emptyRingHasNoNode() {
+        assertThat(new ConsistentHashRing(Collections.emptyList()).getNode("task-1")).isNull();
+    }
+
+    @Test
+    void mappingDoesNotDependOnNodeOrder() {
+        ConsistentHashRing ring1 = new ConsistentHashRing(Arrays.asList("node-a", "node-b", "node-c"));
+        ConsistentHashRing ring2 = new ConsistentHashRing(Arrays.asList("node-c", "node-a", "node-b"));
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(ring1.getNode("task-" + i)).isEqualTo(ring2.getNode("task-" + i));
+        }
+    }
+
+    @Test
+    void keysAreEvenlyDistributed() {
+        List<String> nodes = Arrays.asList("node-a", "node-b", "node-c", "node-d");
+        ConsistentHashRing ring = new ConsistentHashRing(nodes);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.getNode("task-" + i), 1, Integer::sum);
+        }
+
+        assertThat(counts).containsOnlyKeys(nodes.toArray(new String[0]));
+        int average = KEYS / nodes.size();
+        counts.values().forEach(count -> assertThat(count).isBetween(average * 7 / 10, average * 13 / 10));
+    }
+
+    @Test
+    void addingNodeOnlyMovesKeysToIt() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("node-a", "node-b", "node-c", "node-d"));
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("node-a", "node-b", "node-c", "node-d", "node-e"));
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String oldNode = before.getNode("task-" + i);
+            String newNode = after.getNode("task-" + i);
+            if (!oldNode.equals(newNode)) {
+                assertThat(newNode).isEqualTo("node-e");
+                moved++;
+            }
+        }
+
+        // 理想情况下迁移1/5
+        assertThat(moved).isBetween(KEYS / 10, KEYS * 3 / 10);
+    }
+
+    @Test
+    void removingNodeOnlyMovesItsKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("node-a", "node-b", "node-c"));
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("node-a", "node-c"));
+
+        for (int i = 0; i < KEYS; i++) {
+            String oldNode = before.getNode("task-" + i);
+            if (!"node-b".equals(oldNode)) {
+                assertThat(after.getNode("task-" + i)).isEqualTo(oldNode);
+            }
+        }
+    }
+}
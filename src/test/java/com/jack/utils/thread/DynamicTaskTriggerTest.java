@@ -0,0 +1,96 @@
+package com.jack.utils.thread;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DynamicTaskTriggerTest {
+
+    private static final long PERIOD = 1000L;
+    private static final long JITTER = 300L;
+
+    @Test
+    void fixedRateRealignsToGridDespiteJitterAndLateCompletion() {
+        DynamicTaskTrigger trigger = DynamicTaskTrigger.fixedRate(PERIOD, 0L, null, JITTER, "task-1");
+        SimpleTriggerContext context = new SimpleTriggerContext();
+
+        Date first = trigger.nextExecutionTime(context);
+        long expectedBase = first.getTime() - Math.floorMod(first.getTime(), PERIOD);
+        assertThat(first.getTime() - expectedBase).isBetween(0L, JITTER);
+
+        Set<Long> jitters = new HashSet<>();
+        Date scheduled = first;
+        for (int i = 0; i < 200; i++) {
+            // 执行时间比周期还长，不影响下一次的触发时间
+            long completion = scheduled.getTime() + PERIOD + 500L;
+            context.update(scheduled, scheduled, new Date(completion));
+            scheduled = trigger.nextExecutionTime(context);
+
+            expectedBase += PERIOD;
+            long jitter = scheduled.getTime() - expectedBase;
+            assertThat(jitter).isBetween(0L, JITTER);
+            jitters.add(jitter);
+        }
+        // 每次触发的抖动不同
+        assertThat(jitters.size()).isGreaterThan(1);
+    }
+
+    @Test
+    void fixedRateJitterIsStableAcrossNodes() {
+        long startTime = System.currentTimeMillis() + 60_000L;
+        DynamicTaskTrigger node1 = DynamicTaskTrigger.fixedRate(PERIOD, 0L, startTime, JITTER, "task-1");
+        DynamicTaskTrigger node2 = DynamicTaskTrigger.fixedRate(PERIOD, 0L, startTime, JITTER, "task-1");
+        SimpleTriggerContext context1 = new SimpleTriggerContext();
+        SimpleTriggerContext context2 = new SimpleTriggerContext();
+
+        for (int i = 0; i < 50; i++) {
+            Date next1 = node1.nextExecutionTime(context1);
+            Date next2 = node2.nextExecutionTime(context2);
+            assertThat(next1).isEqualTo(next2);
+            assertThat(next1.getTime() - (startTime + i * PERIOD)).isBetween(0L, JITTER);
+            context1.update(next1, next1, next1);
+            context2.update(next2, new Date(next2.getTime() + 10L), new Date(next2.getTime() + 20L));
+        }
+    }
+
+    @Test
+    void fixedRateWithPastStartTimeAlignsToItsGrid() {
+        long startTime = System.currentTimeMillis() - 10_500L;
+        DynamicTaskTrigger trigger = DynamicTaskTrigger.fixedRate(PERIOD, 0L, startTime, 0L, "task-1");
+
+        Date first = trigger.nextExecutionTime(new SimpleTriggerContext());
+
+        assertThat(first.getTime()).isGreaterThanOrEqualTo(System.currentTimeMillis() - PERIOD);
+        assertThat(Math.floorMod(first.getTime() - startTime, PERIOD)).isZero();
+    }
+
+    @Test
+    void fixedDelayStartsAfterCompletion() {
+        DynamicTaskTrigger trigger = DynamicTaskTrigger.fixedDelay(PERIOD, 0L, null, 0L, "task-1");
+        SimpleTriggerContext context = new SimpleTriggerContext();
+        Date first = trigger.nextExecutionTime(context);
+        Date completion = new Date(first.getTime() + 2500L);
+
+        context.update(first, first, completion);
+
+        assertThat(trigger.nextExecutionTime(context)).isEqualTo(new Date(completion.getTime() + PERIOD));
+    }
+
+    @Test
+    void oneShotFiresOnce() {
+        long startTime = System.currentTimeMillis() + 60_000L;
+        DynamicTaskTrigger trigger = DynamicTaskTrigger.oneShot(startTime, JITTER, "task-1");
+        SimpleTriggerContext context = new SimpleTriggerContext();
+
+        Date first = trigger.nextExecutionTime(context);
+        assertThat(first.getTime() - startTime).isBetween(0L, JITTER);
+
+        context.update(first, first, first);
+        assertThat(trigger.nextExecutionTime(context)).isNull();
+    }
+}
@@ -0,0 +1,93 @@
+package com.jack.utils.thread;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HashedWheelTaskSchedulerTest {
+
+    /**
+     * 1ms的刻度、每层4个槽位：各层分别覆盖4、16、64、256个刻度，较远的任务需要逐层下降
+     */
+    private final HashedWheelTaskScheduler scheduler = new HashedWheelTaskScheduler(1, 4);
+
+    @AfterEach
+    void destroy() {
+        scheduler.destroy();
+    }
+
+    @Test
+    void tasksCascadeDownAndNeverRunEarly() throws InterruptedException {
+        long[] delays = {0, 3, 10, 30, 70, 150, 250, 400};
+        CountDownLatch latch = new CountDownLatch(delays.length);
+        List<Long> earlyMillis = new CopyOnWriteArrayList<>();
+        for (long delay : delays) {
+            long executionTime = System.currentTimeMillis() + delay;
+            scheduler.schedule(() -> {
+                long now = System.currentTimeMillis();
+                if (now < executionTime) {
+                    earlyMillis.add(executionTime - now);
+                }
+                latch.countDown();
+            }, new Date(executionTime));
+        }
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(earlyMillis).isEmpty();
+    }
+
+    @Test
+    void oneShotFutureCompletesAfterRun() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = scheduler.schedule(runs::incrementAndGet, new Date(System.currentTimeMillis() + 20));
+
+        assertThat(future.get(5, TimeUnit.SECONDS)).isNull();
+        assertThat(future.isDone()).isTrue();
+        assertThat(future.isCancelled()).isFalse();
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelledTaskDoesNotRun() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = scheduler.schedule(runs::incrementAndGet, new Date(System.currentTimeMillis() + 100));
+
+        assertThat(future.cancel(false)).isTrue();
+        assertThat(future.isCancelled()).isTrue();
+        assertThat(future.isDone()).isTrue();
+        assertThat(future.cancel(false)).isFalse();
+        assertThatThrownBy(future::get).isInstanceOf(CancellationException.class);
+
+        TimeUnit.MILLISECONDS.sleep(300);
+        assertThat(runs.get()).isZero();
+    }
+
+    @Test
+    void cancelStopsPeriodicTask() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(3);
+        ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(() -> {
+            runs.incrementAndGet();
+            latch.countDown();
+        }, 10);
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(future.cancel(false)).isTrue();
+        // 取消时可能正好有一次在执行
+        TimeUnit.MILLISECONDS.sleep(20);
+        int runsAfterCancel = runs.get();
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat(runs.get()).isEqualTo(runsAfterCancel);
+    }
+}
@@ -0,0 +1,107 @@
+package com.jack.utils.thread;
+
+import com.jack.utils.config.DynamicTaskProperties.OverlapPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OverlapGuardTest {
+
+    @Test
+    void skipRejectsWhileRunning() {
+        OverlapGuard guard = OverlapGuard.of(OverlapPolicy.SKIP, 0);
+
+        assertThat(guard.tryAcquire(1L)).isTrue();
+        assertThat(guard.tryAcquire(2L)).isFalse();
+        assertThat(guard.tryAcquire(3L)).isFalse();
+        assertThat(guard.release()).isEqualTo(OverlapGuard.NO_PENDING);
+        assertThat(guard.tryAcquire(4L)).isTrue();
+    }
+
+    @Test
+    void queueOneCoalescesTriggersIntoOnePendingRun() {
+        OverlapGuard guard = OverlapGuard.of(OverlapPolicy.QUEUE_ONE, 0);
+
+        assertThat(guard.tryAcquire(1L)).isTrue();
+        assertThat(guard.tryAcquire(2L)).isFalse();
+        assertThat(guard.tryAcquire(3L)).isFalse();
+        assertThat(guard.tryAcquire(4L)).isFalse();
+
+        // 名额转交给排队的触发，合并的触发不会再执行
+        assertThat(guard.release()).isEqualTo(2L);
+        assertThat(guard.tryAcquire(5L)).isFalse();
+        assertThat(guard.release()).isEqualTo(5L);
+        assertThat(guard.release()).isEqualTo(OverlapGuard.NO_PENDING);
+
+        assertThat(guard.tryAcquire(6L)).isTrue();
+        assertThat(guard.release()).isEqualTo(OverlapGuard.NO_PENDING);
+    }
+
+    @Test
+    void concurrentLimitsRuns() {
+        OverlapGuard guard = OverlapGuard.of(OverlapPolicy.CONCURRENT, 2);
+
+        assertThat(guard.tryAcquire(1L)).isTrue();
+        assertThat(guard.tryAcquire(2L)).isTrue();
+        assertThat(guard.tryAcquire(3L)).isFalse();
+        assertThat(guard.release()).isEqualTo(OverlapGuard.NO_PENDING);
+        assertThat(guard.tryAcquire(4L)).isTrue();
+    }
+
+    @Test
+    void unlimitedConcurrentNeedsNoGuard() {
+        assertThat(OverlapGuard.of(OverlapPolicy.CONCURRENT, 0)).isNull();
+    }
+
+    @Test
+    void queueOneNeverRunsConcurrentlyAndLosesNoTrailingTrigger() throws Exception {
+        OverlapGuard guard = OverlapGuard.of(OverlapPolicy.QUEUE_ONE, 0);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger runs = new AtomicInteger();
+        int threads = 8;
+        int triggersPerThread = 10_000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < triggersPerThread; i++) {
+                        if (!guard.tryAcquire(i)) {
+                            continue;
+                        }
+                        // 与DynamicTask一样，有排队的触发时名额直接转交给它，紧接着执行
+                        do {
+                            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                            runs.incrementAndGet();
+                            running.decrementAndGet();
+                        } while (guard.release() != OverlapGuard.NO_PENDING);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(maxRunning.get()).isEqualTo(1);
+        assertThat(runs.get()).isPositive();
+        // 所有的执行都已经完成，不会残留占用的名额
+        assertThat(guard.tryAcquire(0L)).isTrue();
+    }
+}
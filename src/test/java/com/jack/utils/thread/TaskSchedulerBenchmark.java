@@ -0,0 +1,82 @@
+package com.jack.utils.thread;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DynamicTask调度器的基准测试：Spring的ThreadPoolTaskScheduler（堆） vs 分层时间轮。
+ * <p></p>
+ * 先添加taskCount个常驻的定时任务（1~60分钟后执行），再测量在此规模下添加并取消一个定时任务的耗时，模拟大量定时任务的增删。
+ * <p></p>
+ * default为DynamicTask当前使用的调度器（取消的任务仍留在堆中直到到期），
+ * default-remove-on-cancel为取消时立即从堆中移除的调度器。在IDE中直接运行main方法即可。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskSchedulerBenchmark {
+
+    @Param({"default", "default-remove-on-cancel", "hashed-wheel"})
+    private String schedulerType;
+
+    @Param({"100000"})
+    private int taskCount;
+
+    private TaskScheduler taskScheduler;
+
+    @Setup
+    public void setup() {
+        if ("hashed-wheel".equals(schedulerType)) {
+            taskScheduler = new HashedWheelTaskScheduler(100L, 512);
+        } else {
+            ThreadPoolTaskScheduler threadPoolTaskScheduler = new ThreadPoolTaskScheduler();
+            threadPoolTaskScheduler.setRemoveOnCancelPolicy("default-remove-on-cancel".equals(schedulerType));
+            threadPoolTaskScheduler.initialize();
+            taskScheduler = threadPoolTaskScheduler;
+        }
+
+        Runnable task = () -> { };
+        for (int i = 0; i < taskCount; i++) {
+            taskScheduler.schedule(task, randomStartTime());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (taskScheduler instanceof HashedWheelTaskScheduler) {
+            ((HashedWheelTaskScheduler) taskScheduler).destroy();
+        } else {
+            ((ThreadPoolTaskScheduler) taskScheduler).shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        ScheduledFuture<?> future = taskScheduler.schedule(() -> { }, randomStartTime());
+        return future.cancel(false);
+    }
+
+    private static Date randomStartTime() {
+        return new Date(System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(60_000L, 3_600_000L));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TaskSchedulerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}